@@ -1,12 +1,12 @@
 import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Canonical form for a contour has points in clockwise order (assuming x
@@ -18,17 +18,41 @@ public class Contour implements Serializable {
 	/**
 	 * default serial version uid
 	 */
-	private static final long serialVersionUID = 1L;
-	private List<Point2D> contour;
-	private Point2D upperLeft;
+	private static final long serialVersionUID = 2L;
+	// the points as x, y pairs, each once. The loop closes from the last back
+	// to the first.
+	private double[] xy;
+	private int size;
+	// the point that comes first in canonical form
+	private int start;
+	// where each point is in xy, looked up by hashing its coordinates; made
+	// the first time a point is looked up and dropped on any change
+	private transient int[] index;
+	// the last simplification asked for, dropped on any change
+	private transient volatile Simplified simplified;
+	// measured when first asked for, dropped on any change
+	private transient volatile ContourMetrics metrics;
+	// changes with every edit
+	private transient int modCount;
 	private final int id;
-	private static int nextId = 0;
+	private static final AtomicInteger nextId = new AtomicInteger();
 
 	public Contour(List<Point2D> outline) {
-		id = nextId;
-		nextId++;
-		contour = new ArrayList<Point2D>();
-		contour.addAll(outline);
+		this(outline, nextId.getAndIncrement());
+	}
+
+	/**
+	 * @param id
+	 *            one of the ids handed out by reserveIds
+	 */
+	Contour(List<Point2D> outline, int id) {
+		this.id = id;
+		xy = new double[2 * outline.size()];
+		for (Point2D pt : outline) {
+			xy[2 * size] = pt.getX();
+			xy[2 * size + 1] = pt.getY();
+			size++;
+		}
 
 		// reduces complexity (potentially not by much, but eh)
 		removeColinearPts();
@@ -38,12 +62,97 @@ public class Contour implements Serializable {
 	}
 
 	/**
-	 * Unmodifiable version of the underlying points of this contour
+	 * A copy with the same points and id, which can be edited without
+	 * changing the original
+	 */
+	Contour(Contour original) {
+		id = original.id;
+		xy = Arrays.copyOf(original.xy, 2 * original.size);
+		size = original.size;
+		start = original.start;
+		modCount = original.modCount;
+		// they describe the same points, and are never changed
+		simplified = original.simplified;
+		metrics = original.metrics;
+	}
+
+	/**
+	 * Sets aside count consecutive ids, so contours made on several threads
+	 * can be numbered in a fixed order
+	 * 
+	 * @return The first of the ids
+	 */
+	static int reserveIds(int count) {
+		return nextId.getAndAdd(count);
+	}
+
+	/**
+	 * Unmodifiable version of the underlying points of this contour, in
+	 * canonical order and ending with the first point again
 	 * 
 	 * @return
 	 */
 	public Collection<Point2D> points() {
-		return Collections.unmodifiableCollection(contour);
+		return new AbstractList<Point2D>() {
+			@Override
+			public Point2D get(int i) {
+				if (i < 0 || i > size) {
+					throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + (size + 1));
+				}
+				return new Point2D.Double(getX(i), getY(i));
+			}
+
+			@Override
+			public int size() {
+				return size + 1;
+			}
+		};
+	}
+
+	/**
+	 * @return The number of distinct points in the loop
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The x of point i in canonical order, where point size() is
+	 *         point 0 again
+	 */
+	public double getX(int i) {
+		return xy[2 * stored(i)];
+	}
+
+	/**
+	 * @return The y of point i in canonical order, where point size() is
+	 *         point 0 again
+	 */
+	public double getY(int i) {
+		return xy[2 * stored(i) + 1];
+	}
+
+	/**
+	 * @return A number that changes whenever this contour is edited
+	 */
+	int modCount() {
+		return modCount;
+	}
+
+	/**
+	 * @return The points as x, y pairs in canonical order, without the first
+	 *         repeated at the end; a copy
+	 */
+	public double[] toArray() {
+		return getSubsequence(0, size - 1);
+	}
+
+	/**
+	 * @return Where point i in canonical order is kept in xy
+	 */
+	private int stored(int i) {
+		i += start;
+		return i >= size ? i % size : i;
 	}
 
 	/**
@@ -51,40 +160,45 @@ public class Contour implements Serializable {
 	 * 
 	 * @param start
 	 * @param end
-	 * @return
+	 * @return The points as x, y pairs
 	 */
-	private List<Point2D> getSubsequence(int start, int end) {
-		List<Point2D> list = new ArrayList<Point2D>((end - start + contour.size()) % contour.size());
-		if (start <= end) {
-			for (int i = start; i <= end; i++) {
-				list.add(contour.get(i));
-			}
-		} else {
-			// i < contour.size()-1 to avoid duplicating the start/end node
-			// of contour
-			for (int i = start; i < contour.size() - 1; i++) {
-				list.add(contour.get(i));
-			}
-			// add it if it's not actually a duplicate
-			if (!contour.get(0).equals(contour.get(contour.size() - 1))) {
-				list.add(contour.get(contour.size() - 1));
-			}
-			// add the rest of the points
-			for (int i = 0; i <= end; i++) {
-				list.add(contour.get(i));
-			}
-		}
+	private double[] getSubsequence(int start, int end) {
+		int count = (end - start + size) % size + 1;
+		double[] list = new double[2 * count];
+		int from = stored(start);
+		// at most two runs, before and after the end of xy
+		int first = Math.min(count, size - from);
+		System.arraycopy(xy, 2 * from, list, 0, 2 * first);
+		System.arraycopy(xy, 0, list, 2 * first, 2 * (count - first));
 		return list;
 	}
 
+	/**
+	 * Makes the points the given x, y pairs, in canonical form
+	 */
+	private void setPoints(double[] points, int count) {
+		xy = points;
+		size = count;
+		start = 0;
+		forceCanonical();
+	}
+
 	private void forceCanonical() {
-		if (!contour.get(0).equals(contour.get(contour.size() - 1))) {
-			contour.add(contour.get(0));
+		index = null;
+		simplified = null;
+		metrics = null;
+		modCount++;
+		if (size == 0) {
+			return;
+		}
+		if (size > 1 && xy[0] == xy[2 * size - 2] && xy[1] == xy[2 * size - 1]) {
+			// the loop closes by itself
+			size--;
 		}
 		if (!isClockwise()) {
-			Collections.reverse(contour);
+			reverse();
 		}
-		reIndex(findUpperLeft());
+		start = findUpperLeft();
 	}
 
 	/**
@@ -108,29 +222,36 @@ public class Contour implements Serializable {
 	 */
 	public void splice(Contour other, Point2D thisStart, Point2D thisEnd, //
 			Point2D otherStart, Point2D otherEnd, boolean reverse) {
-		int thisStartI = contour.indexOf(thisStart);
-		int thisEndI = contour.indexOf(thisEnd);
-		int otherStartI = other.contour.indexOf(otherStart);
-		int otherEndI = other.contour.indexOf(otherEnd);
+		splice(other, indexOf(thisStart), indexOf(thisEnd), other.indexOf(otherStart), other.indexOf(otherEnd),
+				reverse);
+	}
 
+	/**
+	 * Like splice with points, but with the points' indices in canonical
+	 * order, such as a VertexSnap gives
+	 */
+	public void splice(Contour other, int thisStartI, int thisEndI, int otherStartI, int otherEndI,
+			boolean reverse) {
 		// get points
-		List<Point2D> thisList = getSubsequence(thisStartI, thisEndI);
-		List<Point2D> otherList = other.getSubsequence(otherStartI, otherEndI);
+		double[] thisList = getSubsequence(thisStartI, thisEndI);
+		double[] otherList = other.getSubsequence(otherStartI, otherEndI);
 
-		System.out.println("Ready to splice: " + thisList.size() + " " + otherList.size());
+		System.out.println("Ready to splice: " + thisList.length / 2 + " " + otherList.length / 2);
 		System.out.println(thisStartI + " " + thisEndI);
 
 		// update this
-		contour.clear();
-		contour.addAll(thisList);
+		double[] points = Arrays.copyOf(thisList, thisList.length + otherList.length);
 		if (reverse) {
-			Collections.reverse(otherList);
+			for (int i = 0; i < otherList.length; i += 2) {
+				points[thisList.length + i] = otherList[otherList.length - 2 - i];
+				points[thisList.length + i + 1] = otherList[otherList.length - 1 - i];
+			}
+		} else {
+			System.arraycopy(otherList, 0, points, thisList.length, otherList.length);
 		}
-		contour.addAll(otherList);
-		contour.add(contour.get(0));
 
 		// canonical form!
-		forceCanonical();
+		setPoints(points, points.length / 2);
 	}
 
 	/**
@@ -140,9 +261,23 @@ public class Contour implements Serializable {
 	 *                 clockwise point in this contour
 	 */
 	public void insert(Point2D startPt, List<Point2D> toInsert) {
-		int insertAt = contour.indexOf(startPt);
-		contour.addAll(insertAt, toInsert);
-		forceCanonical();
+		insert(indexOf(startPt), toInsert);
+	}
+
+	/**
+	 * Like insert with a point, but with its index in canonical order
+	 */
+	public void insert(int startI, List<Point2D> toInsert) {
+		int insertAt = stored(startI) + 1;
+		double[] points = new double[2 * (size + toInsert.size())];
+		System.arraycopy(xy, 0, points, 0, 2 * insertAt);
+		int i = 2 * insertAt;
+		for (Point2D pt : toInsert) {
+			points[i++] = pt.getX();
+			points[i++] = pt.getY();
+		}
+		System.arraycopy(xy, 2 * insertAt, points, i, 2 * (size - insertAt));
+		setPoints(points, size + toInsert.size());
 	}
 
 	/**
@@ -152,17 +287,24 @@ public class Contour implements Serializable {
 	 * 
 	 * @param startPt
 	 * @param endPt
+	 * @throws IllegalArgumentException
+	 *             Thrown if the range is the whole contour, as a contour
+	 *             with no points isn't one
 	 */
 	public void delete(Point2D startPt, Point2D endPt) {
-		int deleteAt = contour.indexOf(startPt);
-		while (!contour.get(deleteAt).equals(endPt)) {
-			contour.remove(deleteAt);
-			if (deleteAt == contour.size()) {
-				deleteAt = 0;
-			}
-		}
-		contour.remove(deleteAt);
+		delete(indexOf(startPt), indexOf(endPt));
+	}
 
+	/**
+	 * Like delete with points, but with their indices in canonical order
+	 */
+	public void delete(int startI, int endI) {
+		// keep the rest, from just after endPt round to just before startPt
+		int count = size - ((endI - startI + size) % size + 1);
+		if (count == 0) {
+			throw new IllegalArgumentException("Can't delete every point of a contour");
+		}
+		setPoints(getSubsequence((endI + 1) % size, (startI - 1 + size) % size), count);
 	}
 
 	/**
@@ -177,74 +319,235 @@ public class Contour implements Serializable {
 	 * @return
 	 */
 	public Contour split(Point2D startPt, Point2D endPt) {
-		int thisStartI = contour.indexOf(startPt);
-		int thisEndI = contour.indexOf(endPt);
+		return split(indexOf(startPt), indexOf(endPt));
+	}
 
+	/**
+	 * Like split with points, but with their indices in canonical order
+	 */
+	public Contour split(int thisStartI, int thisEndI) {
 		// get points
-		List<Point2D> thisList = getSubsequence(thisStartI, thisEndI);
-		List<Point2D> otherList = getSubsequence(thisEndI, thisStartI);
+		double[] thisList = getSubsequence(thisStartI, thisEndI);
+		double[] otherList = getSubsequence(thisEndI, thisStartI);
 
-		contour = thisList;
-		forceCanonical();
+		setPoints(thisList, thisList.length / 2);
 
-		return new Contour(otherList);
+		List<Point2D> other = new ArrayList<Point2D>(otherList.length / 2);
+		for (int i = 0; i < otherList.length; i += 2) {
+			other.add(new Point2D.Double(otherList[i], otherList[i + 1]));
+		}
+		return new Contour(other);
 	}
 
 	public Path2D asPath(double xOffset) {
-		Path2D path2d = new Path2D.Double();
-		path2d.moveTo(contour.get(0).getX() + xOffset, contour.get(0).getY());
-		int i = 0;
-		for (Point2D pt : contour) {
-			if (i % 5 == 0) {
-				path2d.lineTo(pt.getX() + xOffset, pt.getY());
-			}
-			i++;
+		return asPath(xOffset, 0);
+	}
+
+	/**
+	 * @param tolerance
+	 *            how far the path may stray from the contour, see simplify
+	 */
+	public Path2D asPath(double xOffset, double tolerance) {
+		double[] points = simplify(tolerance);
+		Path2D path2d = new Path2D.Double(Path2D.WIND_NON_ZERO, points.length / 2 + 1);
+		path2d.moveTo(points[0] + xOffset, points[1]);
+		for (int i = 2; i < points.length; i += 2) {
+			path2d.lineTo(points[i] + xOffset, points[i + 1]);
 		}
-		path2d.lineTo(contour.get(0).getX() + xOffset, contour.get(0).getY());
+		path2d.lineTo(points[0] + xOffset, points[1]);
 		return path2d;
 	}
 
-	public boolean contains(Point2D pt) {
-		return contour.contains(pt);
+	private static final class Simplified {
+		private final double tolerance;
+		private final double[] xy;
+
+		private Simplified(double tolerance, double[] xy) {
+			this.tolerance = tolerance;
+			this.xy = xy;
+		}
 	}
 
-	public int indexOf(Point2D pt) {
-		return contour.indexOf(pt);
+	/**
+	 * Simplifies the loop with the Douglas-Peucker algorithm: starting from
+	 * point 0 and the point farthest from it, a stretch of the loop is
+	 * replaced by the segment between its ends unless some point of it is
+	 * farther than tolerance from the segment, in which case the farthest
+	 * point is kept and both halves are looked at in turn. The result is
+	 * kept until this contour changes or another tolerance is asked for.
+	 * 
+	 * @param tolerance
+	 *            farthest a dropped point may be from the simplified loop, in
+	 *            map units
+	 * @return The points kept, as x, y pairs in canonical order starting with
+	 *         point 0, which isn't repeated at the end. Not to be changed.
+	 */
+	public double[] simplify(double tolerance) {
+		Simplified cached = simplified;
+		if (cached == null || cached.tolerance != tolerance) {
+			cached = new Simplified(tolerance, douglasPeucker(tolerance));
+			simplified = cached;
+		}
+		return cached.xy;
 	}
 
-	private void reIndex(int inflectionIndex) {
+	private double[] douglasPeucker(double tolerance) {
+		// in canonical order, so the loop is a plain run from 0 to size
+		double[] loop = toArray();
+		boolean[] kept = new boolean[size + 1];
+		kept[0] = true;
+		kept[size] = true;
+		int count = 1;
+
+		int farthest = 0;
+		double farthestDistance = -1;
+		for (int i = 1; i < size; i++) {
+			double dx = loop[2 * i] - loop[0], dy = loop[2 * i + 1] - loop[1];
+			if (dx * dx + dy * dy > farthestDistance) {
+				farthestDistance = dx * dx + dy * dy;
+				farthest = i;
+			}
+		}
+		if (farthest > 0) {
+			kept[farthest] = true;
+			count++;
+		}
 
-		if (inflectionIndex == 0 || inflectionIndex == contour.size() - 1) {
-			return;
+		// stretches still to look at, as pairs of ends. They never overlap,
+		// so there are never more than there are points.
+		int[] stack = new int[2 * (size + 1)];
+		int top = 0;
+		if (farthest > 0) {
+			stack[top++] = 0;
+			stack[top++] = farthest;
+			stack[top++] = farthest;
+			stack[top++] = size;
+		}
+		double limit = tolerance * tolerance;
+		while (top > 0) {
+			int last = stack[--top], first = stack[--top];
+			int worst = -1;
+			double worstDistance = limit;
+			for (int i = first + 1; i < last; i++) {
+				double distance = distanceSq(loop, i, first, last % size);
+				if (distance > worstDistance) {
+					worstDistance = distance;
+					worst = i;
+				}
+			}
+			if (worst >= 0) {
+				kept[worst] = true;
+				count++;
+				stack[top++] = first;
+				stack[top++] = worst;
+				stack[top++] = worst;
+				stack[top++] = last;
+			}
 		}
 
-		List<Point2D> l1 = new ArrayList<Point2D>(), l2 = new ArrayList<Point2D>();
+		double[] points = new double[2 * count];
+		int p = 0;
+		for (int i = 0; i < size; i++) {
+			if (kept[i]) {
+				points[p++] = loop[2 * i];
+				points[p++] = loop[2 * i + 1];
+			}
+		}
+		return points;
+	}
 
-		for (int i = 1; i < contour.size(); i++) {
-			if (i < inflectionIndex) {
-				l1.add(contour.get(i));
-			} else {
-				l2.add(contour.get(i));
+	/**
+	 * @return The square of the distance from point i to the segment between
+	 *         points a and b, all points of the x, y pairs
+	 */
+	private static double distanceSq(double[] points, int i, int a, int b) {
+		double ax = points[2 * a], ay = points[2 * a + 1];
+		double dx = points[2 * b] - ax, dy = points[2 * b + 1] - ay;
+		double px = points[2 * i] - ax, py = points[2 * i + 1] - ay;
+		double length = dx * dx + dy * dy;
+		double t = length > 0 ? Math.max(0, Math.min(1, (px * dx + py * dy) / length)) : 0;
+		px -= t * dx;
+		py -= t * dy;
+		return px * px + py * py;
+	}
+
+	public boolean contains(Point2D pt) {
+		return indexOf(pt) >= 0;
+	}
+
+	/**
+	 * @return The first index of the point in canonical order, or -1 if it
+	 *         isn't in this contour
+	 */
+	public int indexOf(Point2D pt) {
+		if (index == null) {
+			buildIndex();
+		}
+		double x = pt.getX(), y = pt.getY();
+		int mask = index.length - 1;
+		for (int i = hash(x, y, mask); index[i] >= 0; i = (i + 1) & mask) {
+			int p = index[i];
+			if (xy[2 * p] == x && xy[2 * p + 1] == y) {
+				return (p - start + size) % size;
 			}
 		}
-		contour.clear();
-		contour.addAll(l2);
-		contour.addAll(l1);
-		contour.add(contour.get(0));
+		return -1;
+	}
+
+	/**
+	 * Hashes every point, keeping the first in canonical order where a point
+	 * comes up more than once
+	 */
+	private void buildIndex() {
+		int[] table = new int[Integer.highestOneBit(Math.max(2 * size, 16) - 1) << 1];
+		Arrays.fill(table, -1);
+		int mask = table.length - 1;
+		for (int i = 0; i < size; i++) {
+			int p = stored(i);
+			double x = xy[2 * p], y = xy[2 * p + 1];
+			int slot = hash(x, y, mask);
+			while (table[slot] >= 0 && !(xy[2 * table[slot]] == x && xy[2 * table[slot] + 1] == y)) {
+				slot = (slot + 1) & mask;
+			}
+			if (table[slot] < 0) {
+				table[slot] = p;
+			}
+		}
+		index = table;
+	}
+
+	private static int hash(double x, double y, int mask) {
+		// + 0.0 so that -0.0 hashes like 0.0, which it equals
+		long h = Double.doubleToLongBits(x + 0.0) * 31 + Double.doubleToLongBits(y + 0.0);
+		h *= 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * Turns the loop around in place
+	 */
+	private void reverse() {
+		for (int i = 0, j = size - 1; i < j; i++, j--) {
+			double x = xy[2 * i], y = xy[2 * i + 1];
+			xy[2 * i] = xy[2 * j];
+			xy[2 * i + 1] = xy[2 * j + 1];
+			xy[2 * j] = x;
+			xy[2 * j + 1] = y;
+		}
 	}
 
 	/**
 	 * 
-	 * @return The index of the first point to satisfy upper-left criteria
+	 * @return Where in xy the first point to satisfy upper-left criteria is
 	 */
 	private int findUpperLeft() {
-		upperLeft = new Point2D.Double(Double.MAX_VALUE, Double.MAX_VALUE);
-		int index = -1;
-		for (int i = 0; i < contour.size(); i++) {
-			Point2D pt = contour.get(i);
-			if (pt.getY() < upperLeft.getY() //
-					|| (pt.getY() == upperLeft.getY() && pt.getX() < upperLeft.getX())) {
-				upperLeft = pt;
+		double upperX = Double.MAX_VALUE, upperY = Double.MAX_VALUE;
+		int index = 0;
+		for (int i = 0; i < size; i++) {
+			double x = xy[2 * i], y = xy[2 * i + 1];
+			if (y < upperY || (y == upperY && x < upperX)) {
+				upperX = x;
+				upperY = y;
 				index = i;
 			}
 		}
@@ -255,59 +558,93 @@ public class Contour implements Serializable {
 		// Source of algorithm:
 		// https://stackoverflow.com/questions/1165647/how-to-determine-if-a-list-of-polygon-points-are-in-clockwise-order
 
-		Point2D prev = contour.get(contour.size() - 1);
+		double prevX = xy[2 * size - 2], prevY = xy[2 * size - 1];
 		double sum = 0;
-		for (Point2D pt : contour) {
-			sum += (pt.getX() - prev.getX()) * (pt.getY() + prev.getY());
-			prev = pt;
+		for (int i = 0; i < size; i++) {
+			double x = xy[2 * i], y = xy[2 * i + 1];
+			sum += (x - prevX) * (y + prevY);
+			prevX = x;
+			prevY = y;
 		}
 		return sum < 0;
 	}
 
 	private void removeColinearPts() {
-		// if theta <= nearlyZero, the pts are colinear
-		// (theta is in radians)
-		double nearlyZero = 1.0 / 180.0 * Math.PI;
-
-		Set<Point2D> ptsToRemove = new HashSet<Point2D>();
-		Point2D prev = contour.get(contour.size() - 2);
-		for (int i = 0; i < contour.size() - 1; i++) {
+		// the last point is never looked at; it's the first again if the
+		// outline is closed
+		int last = size - 1;
+		boolean keepLast = true;
+		boolean closed = xy[0] == xy[2 * last] && xy[1] == xy[2 * last + 1];
+		int prev = size - 2;
+		int kept = 0;
+		for (int i = 0; i < last; i++) {
 			// remove duplicate points
-			if (contour.get(i).equals(contour.get(i + 1))) {
-				contour.remove(i);
-				i--;
+			if (xy[2 * i] == xy[2 * i + 2] && xy[2 * i + 1] == xy[2 * i + 3]) {
 				continue;
 			}
 			// check whether they're colinear
-			if (getTheta(prev, contour.get(i), contour.get(i + 1)) <= nearlyZero) {
-				ptsToRemove.add(contour.get(i));
+			if (isColinear(prev, i, i + 1)) {
+				if (i == 0 && closed) {
+					// it's also the closing point
+					keepLast = false;
+				}
 			} else {
 				// the else is important, because it means you're
 				// comparing the next point to the new previous
 				// point, not the one you've just slated for removal
-				prev = contour.get(i);
+				prev = i;
+				keep(i, kept++);
 			}
 		}
-		contour.removeAll(ptsToRemove);
-		// if you removed the start point, make sure the contour
-		// is still a loop
-		if (!contour.get(0).equals(contour.get(contour.size() - 1))) {
-			contour.add(contour.get(0));
+		// points only move down into places already passed, and prev is
+		// always the last one moved, so nothing is overwritten before it's
+		// read
+		if (keepLast) {
+			keep(last, kept++);
 		}
+		size = kept;
 	}
 
+	private void keep(int from, int to) {
+		xy[2 * to] = xy[2 * from];
+		xy[2 * to + 1] = xy[2 * from + 1];
+	}
+
+	/**
+	 * Turning by at most this many radians counts as going straight on
+	 */
+	private static final double NEARLY_ZERO = 1.0 / 180.0 * Math.PI;
+	private static final double NEARLY_ZERO_TAN_SQ = Math.tan(NEARLY_ZERO) * Math.tan(NEARLY_ZERO);
+
 	/**
 	 * 
 	 * @param p one endpoint
 	 * @param q middle point
 	 * @param r other endpoint
-	 * @return 0 if the points are colinear with q in the middle, up to Math.PI if
-	 *         they're colinear but q isn't in the middle.
+	 * @return Whether the turn at q is within NEARLY_ZERO of going straight
+	 *         on: the cross product of the two steps is within tan(NEARLY_ZERO)
+	 *         of their dot product, which has to be positive. False if either
+	 *         step has no length.
+	 */
+	private boolean isColinear(int p, int q, int r) {
+		double ax = xy[2 * q] - xy[2 * p], ay = xy[2 * q + 1] - xy[2 * p + 1];
+		double bx = xy[2 * r] - xy[2 * q], by = xy[2 * r + 1] - xy[2 * q + 1];
+		double dot = ax * bx + ay * by, cross = ax * by - ay * bx;
+		return dot > 0 && cross * cross <= NEARLY_ZERO_TAN_SQ * dot * dot;
+	}
+
+	/**
+	 * @return The area, length, bounding box and centroid of this contour,
+	 *         measured in one pass the first time they are asked for after a
+	 *         change
 	 */
-	private double getTheta(Point2D p, Point2D q, Point2D r) {
-		return Math.acos(//
-				((q.getX() - p.getX()) * (r.getX() - q.getX()) + (q.getY() - p.getY()) * (r.getY() - q.getY()))//
-						/ (p.distance(q) * q.distance(r)));
+	public ContourMetrics getMetrics() {
+		ContourMetrics cached = metrics;
+		if (cached == null) {
+			cached = new ContourMetrics(xy, size);
+			metrics = cached;
+		}
+		return cached;
 	}
 
 	/**
@@ -315,36 +652,43 @@ public class Contour implements Serializable {
 	 * @return The area of the tight bounding box containing this contour.
 	 */
 	public double getAreaEstimate() {
-		double[] minXY = { Double.MAX_VALUE, Double.MAX_VALUE };
-		double[] maxXY = { Double.MIN_VALUE, Double.MIN_VALUE };
-		for (Point2D pt : contour) {
-
-			double[] array = { pt.getX(), pt.getY() };
-			for (int i = 0; i < 2; i++) {
-				if (array[i] < minXY[i]) {
-					minXY[i] = array[i];
-				}
-				if (array[i] > maxXY[i]) {
-					maxXY[i] = array[i];
-				}
-			}
-		}
-		return (maxXY[0] - minXY[0]) * (maxXY[1] - minXY[1]);
+		return getMetrics().getBoundsArea();
 	}
 
 	@Override
 	public String toString() {
-		return contour.toString();
+		return points().toString();
 	}
 
 	public String toStringSimple() {
-		String str = "";
+		StringBuilder str = new StringBuilder();
 
-		for (Point2D pt : contour) {
-			str += pt.getX() + "," + pt.getY() + " ";
+		for (int i = 0; i <= size; i++) {
+			if (i > 0) {
+				str.append(' ');
+			}
+			str.append(getX(i)).append(',').append(getY(i));
+		}
+
+		return str.toString();
+	}
+
+	/**
+	 * Like toStringSimple, but of the loop simplified to the tolerance
+	 */
+	public String toStringSimple(double tolerance) {
+		double[] points = simplify(tolerance);
+		StringBuilder str = new StringBuilder();
+
+		for (int i = 0; i <= points.length; i += 2) {
+			if (i > 0) {
+				str.append(' ');
+			}
+			int p = i % points.length;
+			str.append(points[p]).append(',').append(points[p + 1]);
 		}
 
-		return str.trim();
+		return str.toString();
 	}
 
 	@Override
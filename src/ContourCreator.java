@@ -25,6 +25,7 @@ import java.util.stream.Collectors;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.SwingWorker;
 
 // get stl files from 
 // http://jthatch.com/Terrain2STL/
@@ -45,6 +46,8 @@ public class ContourCreator extends JPanel {
 
 	Point2D mouseLocation = new Point2D.Double(0, 0), query = new Point2D.Double(0, 0),
 			closest = new Point2D.Double(0, 0);
+	// the point on the contours nearest the mouse, kept up as it moves
+	private SegmentSnap hovered;
 
 	private double lakeWashThresh = 4.06;
 	private double[] seattleMajorVals = { 3, //
@@ -70,7 +73,7 @@ public class ContourCreator extends JPanel {
 		f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		Container c = f.getContentPane();
 		c.add(cc, BorderLayout.CENTER);
-		c.add(new MenuPanel(cc.defaultMajorContours()), BorderLayout.EAST);
+		c.add(new MenuPanel(cc.tm.getLevels(), cc.tm, cc::levelsChanged), BorderLayout.EAST);
 
 		f.pack();
 		f.setSize(new Dimension(700, 900));
@@ -159,15 +162,25 @@ public class ContourCreator extends JPanel {
 		addKeyListener(new KeysListener());
 	}
 
-	private List<Double> defaultMajorContours() {
-		double[][] bounds = tm.getBounds();
-		double minZ = bounds[0][2];
-		double maxZ = bounds[1][2];
-		ArrayList<Double> list = new ArrayList<>();
-		for (int i = 0; i < 7; i++) {
-			list.add(minZ + (maxZ - minZ) / 6.0 * i);
-		}
-		return list;
+	/**
+	 * Redraws the contours after levels are added or removed in the menu
+	 */
+	private void levelsChanged() {
+		majorContours.clear();
+		majorContours.addAll(tm.asPaths());
+		transformedMajorContours = majorContours.stream().map((el) -> {
+			return at.createTransformedShape(el);
+		}).collect(Collectors.toList());
+		// index the levels for queries off the event dispatch thread; a query
+		// made first indexes them itself
+		new SwingWorker<Void, Void>() {
+			@Override
+			protected Void doInBackground() {
+				tm.preComputeSearchMap();
+				return null;
+			}
+		}.execute();
+		repaint();
 	}
 
 	@Override
@@ -209,6 +222,9 @@ public class ContourCreator extends JPanel {
 		drawWithColor(g2, Color.BLACK, mouseLocation);
 		drawWithColor(g2, Color.RED, (Point2D) at.transform(query, null));
 		drawWithColor(g2, Color.BLACK, (Point2D) at.transform(closest, null));
+		if (hovered != null) {
+			drawWithColor(g2, Color.MAGENTA, at.transform(hovered.getPoint(), null));
+		}
 
 		for (Point2D pt : importantPoints) {
 			drawWithColor(g2, Color.BLUE, (Point2D) at.transform(pt, null));
@@ -217,6 +233,9 @@ public class ContourCreator extends JPanel {
 
 		g2.setColor(Color.BLACK);
 		g2.drawString("" + index, 10, 10);
+		if (hovered != null) {
+			g2.drawString("level " + hovered.getLevel(), 10, 25);
+		}
 
 		// g2.setTransform(atOrig);
 	}
@@ -283,11 +302,11 @@ public class ContourCreator extends JPanel {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
 			}
-			Point2D closestPt = tm.query(inv);
+			SegmentSnap closestPt = tm.queryContour(inv);
 			System.out.println("Query: " + inv + "   Closest: " + closestPt);
 			if (inv != null && closestPt != null) {
 				query = inv;
-				closest = closestPt;
+				closest = closestPt.getPoint();
 				repaint();
 			}
 		}
@@ -340,8 +359,12 @@ public class ContourCreator extends JPanel {
 
 		@Override
 		public void mouseMoved(MouseEvent arg0) {
-			// TODO Auto-generated method stub
 			mouseLocation.setLocation(arg0.getX(), arg0.getY());
+			try {
+				hovered = tm.queryContourIfReady(at.inverseTransform(mouseLocation, null));
+			} catch (NoninvertibleTransformException e) {
+				hovered = null;
+			}
 			repaint();
 		}
 	}
@@ -404,4 +427,4 @@ public class ContourCreator extends JPanel {
 		g.setColor(c);
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
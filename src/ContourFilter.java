@@ -0,0 +1,41 @@
+/**
+ * Decides which contours to keep. Filters combine with and, so one pass over
+ * the contours checks every criterion, each against the contour's cached
+ * ContourMetrics.
+ */
+public interface ContourFilter {
+
+	/**
+	 * @return Whether to keep the contour
+	 */
+	boolean keep(Contour contour);
+
+	/**
+	 * @return A filter keeping the contours both this and the other keep
+	 */
+	default ContourFilter and(ContourFilter other) {
+		return contour -> keep(contour) && other.keep(contour);
+	}
+
+	/**
+	 * @return A filter keeping contours enclosing at least the given area
+	 */
+	static ContourFilter minArea(double area) {
+		return contour -> contour.getMetrics().getArea() >= area;
+	}
+
+	/**
+	 * @return A filter keeping contours at least the given length around
+	 */
+	static ContourFilter minPerimeter(double perimeter) {
+		return contour -> contour.getMetrics().getPerimeter() >= perimeter;
+	}
+
+	/**
+	 * @return A filter keeping contours with at least the given number of
+	 *         distinct points
+	 */
+	static ContourFilter minVertexCount(int count) {
+		return contour -> contour.size() >= count;
+	}
+}
@@ -0,0 +1,338 @@
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which contours lie inside which, across every level of a set of contours.
+ * Contours never cross, so each one's parent is the smallest contour around
+ * it, at its own level or any other; that makes a forest, worked out once
+ * and then looked up in constant time.
+ *
+ * To find the contours around one, a sweep along x keeps the contours whose
+ * bounding boxes span the sweep line, and only those whose boxes hold the
+ * contour's box are tested, smallest first. A test takes a point of the
+ * contour and counts the edges of the other contour crossed by a ray from it
+ * in the +x direction. Each contour's edges are bucketed into horizontal
+ * slabs so that only the edges in the point's slab are counted.
+ */
+public class ContourHierarchy {
+
+	private final Contour[] contours;
+	private final double[] levels;
+	private final Map<Contour, Integer> indexOf = new HashMap<Contour, Integer>();
+	private final int[] parent;
+	// the nearest contour around each at its own level and at a lower level
+	private final int[] sameLevelParent, lowerParent;
+	private final boolean[] hole;
+	// children of contour i are child[childStart[i]] to child[childStart[i +
+	// 1] - 1]
+	private final int[] childStart, child;
+
+	/**
+	 * @param contours
+	 *            the contours at each level, such as TopoMap shows
+	 */
+	public ContourHierarchy(Map<Double, Set<Contour>> contours) {
+		List<Contour> all = new ArrayList<Contour>();
+		List<Double> levelList = new ArrayList<Double>();
+		for (Map.Entry<Double, Set<Contour>> entry : contours.entrySet()) {
+			for (Contour contour : entry.getValue()) {
+				all.add(contour);
+				levelList.add(entry.getKey());
+			}
+		}
+		int n = all.size();
+		this.contours = all.toArray(new Contour[n]);
+		levels = new double[n];
+		double[] area = new double[n];
+		Rectangle2D[] box = new Rectangle2D[n];
+		for (int i = 0; i < n; i++) {
+			levels[i] = levelList.get(i);
+			indexOf.put(this.contours[i], i);
+			area[i] = this.contours[i].getMetrics().getArea();
+			box[i] = this.contours[i].getMetrics().getBounds();
+		}
+		Slabs[] slabs = new Slabs[n];
+
+		// sweep left to right by the boxes' left sides, keeping the contours
+		// whose boxes reach the sweep line
+		Integer[] byLeft = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			byLeft[i] = i;
+		}
+		// larger first where they line up, so a contour comes after any
+		// contour around it
+		Arrays.sort(byLeft, (a, b) -> box[a].getMinX() != box[b].getMinX()
+				? Double.compare(box[a].getMinX(), box[b].getMinX())
+				: Double.compare(area[b], area[a]));
+		parent = new int[n];
+		Arrays.fill(parent, -1);
+		// candidates are sorted by area as longs of the area's rank and the
+		// contour
+		int[] rank = new int[n];
+		Integer[] byArea = byLeft.clone();
+		Arrays.sort(byArea, (a, b) -> Double.compare(area[a], area[b]));
+		for (int r = 0; r < n; r++) {
+			rank[byArea[r]] = r;
+		}
+		int[] active = new int[n];
+		int activeCount = 0;
+		long[] candidates = new long[n];
+		for (int c : byLeft) {
+			Rectangle2D inner = box[c];
+			int candidateCount = 0;
+			int kept = 0;
+			for (int k = 0; k < activeCount; k++) {
+				int d = active[k];
+				Rectangle2D outer = box[d];
+				if (outer.getMaxX() < inner.getMinX()) {
+					// behind the sweep line for good
+					continue;
+				}
+				active[kept++] = d;
+				if (area[d] > area[c] && outer.getMaxX() >= inner.getMaxX() && outer.getMinY() <= inner.getMinY()
+						&& outer.getMaxY() >= inner.getMaxY()) {
+					candidates[candidateCount++] = (long) rank[d] << 32 | d;
+				}
+			}
+			activeCount = kept;
+			active[activeCount++] = c;
+
+			Arrays.sort(candidates, 0, candidateCount);
+			for (int k = 0; k < candidateCount; k++) {
+				int d = (int) candidates[k];
+				if (slabs[d] == null) {
+					slabs[d] = new Slabs(this.contours[d]);
+				}
+				if (slabs[d].contains(this.contours[c])) {
+					parent[c] = d;
+					break;
+				}
+			}
+		}
+
+		// parents are larger, so going by area, largest first, puts them
+		// before their children
+		sameLevelParent = new int[n];
+		lowerParent = new int[n];
+		hole = new boolean[n];
+		for (int r = n - 1; r >= 0; r--) {
+			int c = byArea[r];
+			int p = parent[c];
+			while (p >= 0 && levels[p] != levels[c]) {
+				p = parent[p];
+			}
+			sameLevelParent[c] = p;
+			// inside an odd number of loops at its own level
+			hole[c] = p >= 0 && !hole[p];
+			p = parent[c];
+			while (p >= 0 && levels[p] >= levels[c]) {
+				p = parent[p];
+			}
+			lowerParent[c] = p;
+		}
+
+		childStart = new int[n + 1];
+		for (int c = 0; c < n; c++) {
+			if (parent[c] >= 0) {
+				childStart[parent[c] + 1]++;
+			}
+		}
+		for (int c = 0; c < n; c++) {
+			childStart[c + 1] += childStart[c];
+		}
+		child = new int[childStart[n]];
+		int[] fill = Arrays.copyOf(childStart, n);
+		for (int c = 0; c < n; c++) {
+			if (parent[c] >= 0) {
+				child[fill[parent[c]]++] = c;
+			}
+		}
+	}
+
+	/**
+	 * A contour's edges, bucketed by the horizontal slabs of its bounding box
+	 * they overlap
+	 */
+	private static class Slabs {
+		private final double[] xy;
+		private final double minY, height;
+		private final int count;
+		// edges starting at point edge[start[s]] to edge[start[s + 1] - 1]
+		// overlap slab s
+		private final int[] start, edge;
+
+		private Slabs(Contour contour) {
+			xy = contour.toArray();
+			int size = contour.size();
+			Rectangle2D box = contour.getMetrics().getBounds();
+			minY = box.getMinY();
+			count = Math.max(1, (int) Math.sqrt(size));
+			height = box.getHeight() / count;
+			start = new int[count + 1];
+			for (int i = 0; i < size; i++) {
+				double a = xy[2 * i + 1], b = xy[next(2 * i) + 1];
+				int last = slab(Math.max(a, b));
+				for (int s = slab(Math.min(a, b)); s <= last; s++) {
+					start[s + 1]++;
+				}
+			}
+			for (int s = 0; s < count; s++) {
+				start[s + 1] += start[s];
+			}
+			edge = new int[start[count]];
+			int[] fill = Arrays.copyOf(start, count);
+			for (int i = 0; i < size; i++) {
+				double a = xy[2 * i + 1], b = xy[next(2 * i) + 1];
+				int last = slab(Math.max(a, b));
+				for (int s = slab(Math.min(a, b)); s <= last; s++) {
+					edge[fill[s]++] = i;
+				}
+			}
+		}
+
+		/**
+		 * @return Where in xy the point after the one at p is
+		 */
+		private int next(int p) {
+			return p + 2 == xy.length ? 0 : p + 2;
+		}
+
+		private int slab(double y) {
+			if (!(height > 0)) {
+				return 0;
+			}
+			return Math.max(0, Math.min(count - 1, (int) ((y - minY) / height)));
+		}
+
+		/**
+		 * @return Whether the other contour, which doesn't cross this one, is
+		 *         inside it. Decided by the first of its points that isn't on
+		 *         this contour; if they all are, it isn't inside.
+		 */
+		private boolean contains(Contour other) {
+			for (int i = 0; i < other.size(); i++) {
+				int side = side(other.getX(i), other.getY(i));
+				if (side != 0) {
+					return side > 0;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return 1 if the point is inside, -1 if outside, 0 if on the
+		 *         contour
+		 */
+		private int side(double x, double y) {
+			if (y < minY || y > minY + height * count) {
+				return -1;
+			}
+			boolean inside = false;
+			int s = slab(y);
+			for (int k = start[s]; k < start[s + 1]; k++) {
+				int i = edge[k];
+				int j = next(2 * i);
+				double ax = xy[2 * i], ay = xy[2 * i + 1];
+				double bx = xy[j], by = xy[j + 1];
+				double cross = (bx - ax) * (y - ay) - (by - ay) * (x - ax);
+				if (cross == 0 && Math.min(ax, bx) <= x && x <= Math.max(ax, bx) && Math.min(ay, by) <= y
+						&& y <= Math.max(ay, by)) {
+					return 0;
+				}
+				// the edge crosses the ray if its ends are on either side of
+				// it, counting an end on it as above
+				if ((ay > y) != (by > y)) {
+					double crossX = ax + (y - ay) * (bx - ax) / (by - ay);
+					if (crossX > x) {
+						inside = !inside;
+					}
+				}
+			}
+			return inside ? 1 : -1;
+		}
+	}
+
+	private int index(Contour contour) {
+		Integer i = indexOf.get(contour);
+		if (i == null) {
+			throw new IllegalArgumentException("Contour not in this hierarchy");
+		}
+		return i;
+	}
+
+	private Contour contour(int i) {
+		return i < 0 ? null : contours[i];
+	}
+
+	/**
+	 * @return The smallest contour around this one at any level, or null if
+	 *         there is none
+	 */
+	public Contour getParent(Contour contour) {
+		return contour(parent[index(contour)]);
+	}
+
+	/**
+	 * @return The contours that this one is the parent of
+	 */
+	public Collection<Contour> getChildren(Contour contour) {
+		int i = index(contour);
+		List<Contour> children = new ArrayList<Contour>(childStart[i + 1] - childStart[i]);
+		for (int k = childStart[i]; k < childStart[i + 1]; k++) {
+			children.add(contours[child[k]]);
+		}
+		return Collections.unmodifiableList(children);
+	}
+
+	/**
+	 * @return The nearest contour around this one at a lower level, which for
+	 *         evenly spaced levels is the one at the level below that the
+	 *         layer cut from this one sits on, or null if there is none
+	 */
+	public Contour getParentBelow(Contour contour) {
+		return contour(lowerParent[index(contour)]);
+	}
+
+	/**
+	 * @return The nearest contour around this one at its own level, or null
+	 */
+	public Contour getSameLevelParent(Contour contour) {
+		return contour(sameLevelParent[index(contour)]);
+	}
+
+	/**
+	 * @return Whether the contour is a hole in its level: inside an odd
+	 *         number of the level's other loops, so the layer cut at that
+	 *         level has a hole there
+	 */
+	public boolean isHole(Contour contour) {
+		return hole[index(contour)];
+	}
+
+	/**
+	 * @return The level the contour is at
+	 */
+	public double getLevel(Contour contour) {
+		return levels[index(contour)];
+	}
+
+	/**
+	 * @return The contours with no contour around them
+	 */
+	public List<Contour> getRoots() {
+		List<Contour> roots = new ArrayList<Contour>();
+		for (int i = 0; i < contours.length; i++) {
+			if (parent[i] < 0) {
+				roots.add(contours[i]);
+			}
+		}
+		return roots;
+	}
+}
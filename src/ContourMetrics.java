@@ -0,0 +1,103 @@
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Measurements of one contour loop, all found in a single pass over its
+ * points: the area it encloses (by the shoelace formula), its length, its
+ * bounding box and the centroid of the area it encloses.
+ */
+public class ContourMetrics {
+
+	private final double area, perimeter;
+	private final double minX, minY, maxX, maxY;
+	private final double centroidX, centroidY;
+	private final int vertexCount;
+
+	/**
+	 * @param xy
+	 *            the loop's points as x, y pairs, each once; the loop closes
+	 *            from the last back to the first
+	 * @param size
+	 *            number of points
+	 */
+	ContourMetrics(double[] xy, int size) {
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		double twiceArea = 0, perimeter = 0;
+		double momentX = 0, momentY = 0, sumX = 0, sumY = 0;
+		double prevX = xy[2 * size - 2], prevY = xy[2 * size - 1];
+		for (int i = 0; i < size; i++) {
+			double x = xy[2 * i], y = xy[2 * i + 1];
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+			double cross = prevX * y - x * prevY;
+			twiceArea += cross;
+			momentX += (prevX + x) * cross;
+			momentY += (prevY + y) * cross;
+			perimeter += Math.hypot(x - prevX, y - prevY);
+			sumX += x;
+			sumY += y;
+			prevX = x;
+			prevY = y;
+		}
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.perimeter = perimeter;
+		area = Math.abs(twiceArea) / 2;
+		if (twiceArea != 0) {
+			centroidX = momentX / (3 * twiceArea);
+			centroidY = momentY / (3 * twiceArea);
+		} else {
+			// no area, so the middle of the points will do
+			centroidX = sumX / size;
+			centroidY = sumY / size;
+		}
+		vertexCount = size;
+	}
+
+	/**
+	 * @return The area enclosed by the loop
+	 */
+	public double getArea() {
+		return area;
+	}
+
+	/**
+	 * @return The length of the loop
+	 */
+	public double getPerimeter() {
+		return perimeter;
+	}
+
+	/**
+	 * @return The tight bounding box of the loop
+	 */
+	public Rectangle2D getBounds() {
+		return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	/**
+	 * @return The area of the tight bounding box
+	 */
+	public double getBoundsArea() {
+		return (maxX - minX) * (maxY - minY);
+	}
+
+	/**
+	 * @return The centroid of the area enclosed by the loop
+	 */
+	public Point2D getCentroid() {
+		return new Point2D.Double(centroidX, centroidY);
+	}
+
+	/**
+	 * @return The number of distinct points in the loop
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+}
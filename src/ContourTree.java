@@ -0,0 +1,272 @@
+import java.util.Arrays;
+
+/**
+ * How the contours of a surface appear, join, split and vanish from the
+ * lowest level to the highest, computed once from the vertex heights and
+ * edges instead of by contouring level after level.
+ *
+ * The split tree (regions below a level merging as it rises) and the join
+ * tree (regions above it merging as it falls) are each built in one sorted
+ * pass with union-find. They are then combined into the contour tree by
+ * repeatedly taking off a leaf that is a leaf in one of them (Carr, Snoeyink
+ * and Axen). Every arc of the contour tree is one contour loop for the levels
+ * between its ends, so the number of loops at a level is the number of arcs
+ * spanning it.
+ *
+ * Levels are compared the way contours are traced: a vertex is below a level
+ * only if its height is strictly less. The loop counts assume the surface has
+ * no handles, like a terrain, with or without walls and a base.
+ */
+public class ContourTree {
+
+	private final MergeTree below, above;
+	// heights at the low and high ends of each arc, ascending
+	private final double[] arcLow, arcHigh;
+	private final double[] critical;
+
+	/**
+	 * @param height
+	 *            of each vertex
+	 * @param edges
+	 *            pairs of vertices joined by an edge of the surface, each edge
+	 *            at least once
+	 */
+	public ContourTree(double[] height, int[] edges) {
+		int n = height.length;
+		int[] order = StaticIntervalTree.sortedIds(height, Runtime.getRuntime().availableProcessors() > 1);
+		int[] rank = new int[n];
+		for (int i = 0; i < n; i++) {
+			rank[order[i]] = i;
+		}
+
+		// each vertex's neighbors, compressed into one array
+		int[] start = new int[n + 1];
+		for (int e = 0; e < edges.length; e++) {
+			start[edges[e] + 1]++;
+		}
+		for (int v = 0; v < n; v++) {
+			start[v + 1] += start[v];
+		}
+		int[] neighbors = new int[edges.length];
+		int[] fill = Arrays.copyOf(start, n);
+		for (int e = 0; e < edges.length; e += 2) {
+			neighbors[fill[edges[e]]++] = edges[e + 1];
+			neighbors[fill[edges[e + 1]]++] = edges[e];
+		}
+
+		// the split tree, with each vertex's arc up to the next vertex its
+		// region reaches, and the vertices whose arcs come up to it
+		int[] splitUp = new int[n];
+		int[] splitDown = new int[n], splitDownXor = new int[n];
+		below = sweep(height, order, rank, start, neighbors, false, splitUp, splitDown, splitDownXor);
+		// and the join tree the other way around
+		int[] joinDown = new int[n];
+		int[] joinUp = new int[n], joinUpXor = new int[n];
+		above = sweep(height, order, rank, start, neighbors, true, joinDown, joinUp, joinUpXor);
+
+		// the contour tree: take off a vertex with nothing above it in the
+		// join tree and one arc below it in the split tree, or the other way
+		// around, along with its one arc
+		double[] low = new double[n], high = new double[n];
+		int arcs = 0;
+		int[] up = new int[n], down = new int[n];
+		boolean[] removed = new boolean[n];
+		// a vertex can be queued again, and can change after it was queued
+		int[] queue = new int[2 * n];
+		int head = 0, tail = 0;
+		for (int v = 0; v < n; v++) {
+			if (joinUp[v] + splitDown[v] == 1) {
+				queue[tail++] = v;
+			}
+		}
+		while (head < tail) {
+			int v = queue[head++];
+			if (removed[v] || joinUp[v] + splitDown[v] != 1) {
+				continue;
+			}
+			int w;
+			if (joinUp[v] == 0) {
+				// a top: its arc goes down the join tree
+				w = joinDown[v];
+				if (w < 0) {
+					continue;
+				}
+				joinUp[w]--;
+				joinUpXor[w] ^= v;
+				// splice it out of the split tree
+				int d = splitDownXor[v], u = splitUp[v];
+				splitUp[d] = u;
+				if (u >= 0) {
+					splitDownXor[u] ^= v ^ d;
+				}
+			} else {
+				// a bottom: its arc goes up the split tree
+				w = splitUp[v];
+				if (w < 0) {
+					continue;
+				}
+				splitDown[w]--;
+				splitDownXor[w] ^= v;
+				int a = joinUpXor[v], b = joinDown[v];
+				joinDown[a] = b;
+				if (b >= 0) {
+					joinUpXor[b] ^= v ^ a;
+				}
+			}
+			removed[v] = true;
+			int bottom = rank[v] < rank[w] ? v : w, top = bottom == v ? w : v;
+			low[arcs] = height[bottom];
+			high[arcs] = height[top];
+			arcs++;
+			up[bottom]++;
+			down[top]++;
+			if (joinUp[w] + splitDown[w] == 1) {
+				queue[tail++] = w;
+			}
+		}
+
+		// anything that isn't one arc in and one arc out is critical
+		double[] heights = new double[n];
+		int count = 0;
+		for (int v = 0; v < n; v++) {
+			if (up[v] != 1 || down[v] != 1) {
+				heights[count++] = height[v];
+			}
+		}
+		critical = Arrays.stream(heights, 0, count).sorted().distinct().toArray();
+		arcLow = Arrays.copyOf(low, arcs);
+		arcHigh = Arrays.copyOf(high, arcs);
+		Arrays.sort(arcLow);
+		Arrays.sort(arcHigh);
+	}
+
+	/**
+	 * Builds a merge tree in one pass over the vertices in height order,
+	 * lowest first for regions below a level or highest first for regions
+	 * above, joining each vertex's region with those of the neighbors
+	 * already passed
+	 *
+	 * @param next
+	 *            filled with the vertex each vertex's region next reaches, or
+	 *            -1
+	 * @param joined
+	 *            filled with the number of regions that join at each vertex
+	 * @param joinedXor
+	 *            filled with the xor of the vertices that next reaches from
+	 *            each one, which is the vertex itself when there's only one
+	 */
+	private static MergeTree sweep(double[] height, int[] order, int[] rank, int[] start, int[] neighbors,
+			boolean descending, int[] next, int[] joined, int[] joinedXor) {
+		int n = height.length;
+		int sign = descending ? -1 : 1;
+		Arrays.fill(next, -1);
+		int[] parent = new int[n];
+		// the last vertex reached and the merge tree node of each region
+		int[] last = new int[n];
+		int[] regionNode = new int[n];
+		int[] nodeOf = new int[n];
+
+		double[] nodeHeight = new double[16];
+		int[] nodeParent = new int[16];
+		int[] children = new int[16];
+		int nodes = 0;
+
+		for (int i = 0; i < n; i++) {
+			int v = order[descending ? n - 1 - i : i];
+			parent[v] = v;
+			last[v] = v;
+			int root = v;
+			int firstNode = -1;
+			for (int k = start[v]; k < start[v + 1]; k++) {
+				int u = neighbors[k];
+				if (descending ? rank[u] < rank[v] : rank[u] > rank[v]) {
+					continue;
+				}
+				int other = find(parent, u);
+				if (other == root) {
+					continue;
+				}
+				next[last[other]] = v;
+				joined[v]++;
+				joinedXor[v] ^= last[other];
+				if (joined[v] == 1) {
+					firstNode = regionNode[other];
+				} else {
+					if (joined[v] == 2) {
+						// regions meet here, so it's a node over the first
+						if (nodes + 1 > nodeHeight.length) {
+							nodeHeight = Arrays.copyOf(nodeHeight, 2 * nodes);
+							nodeParent = Arrays.copyOf(nodeParent, 2 * nodes);
+							children = Arrays.copyOf(children, 2 * nodes);
+						}
+						nodeHeight[nodes] = sign * height[v];
+						nodeParent[nodes] = -1;
+						children[nodes] = 1;
+						nodeParent[firstNode] = nodes;
+						firstNode = nodes++;
+					}
+					nodeParent[regionNode[other]] = firstNode;
+					children[firstNode]++;
+				}
+				parent[other] = root;
+			}
+			if (joined[v] == 0) {
+				// a region starts here
+				if (nodes + 1 > nodeHeight.length) {
+					nodeHeight = Arrays.copyOf(nodeHeight, 2 * nodes);
+					nodeParent = Arrays.copyOf(nodeParent, 2 * nodes);
+					children = Arrays.copyOf(children, 2 * nodes);
+				}
+				nodeHeight[nodes] = sign * height[v];
+				nodeParent[nodes] = -1;
+				children[nodes] = 0;
+				firstNode = nodes++;
+			}
+			regionNode[root] = firstNode;
+			last[root] = v;
+			nodeOf[v] = firstNode;
+		}
+		return new MergeTree(Arrays.copyOf(nodeHeight, nodes), Arrays.copyOf(nodeParent, nodes),
+				Arrays.copyOf(children, nodes), nodeOf, height, sign);
+	}
+
+	private static int find(int[] parent, int v) {
+		while (parent[v] != v) {
+			parent[v] = parent[parent[v]];
+			v = parent[v];
+		}
+		return v;
+	}
+
+	/**
+	 * @return How the regions below a level join as it rises, such as lakes
+	 *         as the water goes up
+	 */
+	public MergeTree getSplitTree() {
+		return below;
+	}
+
+	/**
+	 * @return How the regions at or above a level join as it falls, such as
+	 *         islands as the water goes down
+	 */
+	public MergeTree getJoinTree() {
+		return above;
+	}
+
+	/**
+	 * @return The number of contour loops at level z
+	 */
+	public int loopsAt(double z) {
+		// arcs that start below z and end at or above it
+		return MergeTree.countBelow(arcLow, z, false) - MergeTree.countBelow(arcHigh, z, false);
+	}
+
+	/**
+	 * @return The heights at which loops appear, vanish, join or split,
+	 *         ascending. The number of loops only changes at these heights.
+	 */
+	public double[] criticalHeights() {
+		return critical.clone();
+	}
+}
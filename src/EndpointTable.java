@@ -0,0 +1,134 @@
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Joins contour segments into chains by matching up their ends. Ends are
+ * snapped to a square grid of the given quantum, measured from the corner of
+ * the mesh's bounds, and the grid cell is packed into a long that keys a
+ * primitive hash map of chain numbers. Ends in the same cell are the same
+ * point.
+ */
+public class EndpointTable {
+
+	/**
+	 * Grid spacing used unless told otherwise, fine enough for meshes in
+	 * millimetres or metres
+	 */
+	public static final double DEFAULT_QUANTUM = 1e-5;
+
+	private final double originX, originY;
+	private final double quantum;
+	// chain number of each end, chains that have been joined onto are null
+	private final LongIntHashMap ends = new LongIntHashMap(64, -1);
+	private final List<List<Point2D>> chains = new ArrayList<List<Point2D>>();
+
+	/**
+	 * @param bounds
+	 *            { {minX, minY, ...}, {maxX, maxY, ...} } of every point that
+	 *            will be added
+	 * @param quantum
+	 *            grid spacing for matching ends. If the bounds are more than
+	 *            2^31 cells across, it is widened to fit.
+	 */
+	public EndpointTable(double[][] bounds, double quantum) {
+		if (!(quantum > 0)) {
+			throw new IllegalArgumentException("Quantum must be positive: " + quantum);
+		}
+		originX = bounds[0][0];
+		originY = bounds[0][1];
+		double span = Math.max(bounds[1][0] - originX, bounds[1][1] - originY);
+		this.quantum = Math.max(quantum, Math.scalb(span, -31));
+	}
+
+	/**
+	 * @return The quantum actually used
+	 */
+	public double getQuantum() {
+		return quantum;
+	}
+
+	/**
+	 * @return The grid cell of the point, packed into a long
+	 */
+	public long key(Point2D pt) {
+		long x = (long) Math.floor((pt.getX() - originX) / quantum);
+		long y = (long) Math.floor((pt.getY() - originY) / quantum);
+		return x << 32 | (y & 0xffffffffL);
+	}
+
+	/**
+	 * @return Whether the chain's ends are the same point
+	 */
+	public boolean isClosed(List<Point2D> chain) {
+		return key(chain.get(0)) == key(chain.get(chain.size() - 1));
+	}
+
+	/**
+	 * Adds the chain, joining it onto the chains already in the table that it
+	 * shares an end with. The chain and the ones it is joined onto may be
+	 * changed.
+	 */
+	public void add(List<Point2D> chain) {
+		if (chain.isEmpty()) {
+			return;
+		}
+
+		// look for a chain ending where this one starts, join that on in
+		// front, then turn the result around and do the same at the other end
+		for (int i = 0; i < 2; i++) {
+			long start = key(chain.get(0));
+			int other = ends.get(start);
+			if (other >= 0 && chains.get(other).equals(chain)) {
+				continue;
+			}
+			if (other >= 0) {
+				List<Point2D> before = remove(other);
+				if (key(before.get(0)) == start) {
+					Collections.reverse(before);
+				}
+				// before now ends where chain starts
+				chain.remove(0);
+				before.addAll(chain);
+				chain = before;
+			}
+			Collections.reverse(chain);
+		}
+
+		int number = chains.size();
+		chains.add(chain);
+		ends.put(key(chain.get(0)), number);
+		ends.put(key(chain.get(chain.size() - 1)), number);
+	}
+
+	/**
+	 * Takes a chain out of the table
+	 */
+	private List<Point2D> remove(int number) {
+		List<Point2D> chain = chains.set(number, null);
+		forget(key(chain.get(0)), number);
+		forget(key(chain.get(chain.size() - 1)), number);
+		return chain;
+	}
+
+	private void forget(long end, int number) {
+		if (ends.get(end) == number) {
+			ends.remove(end);
+		}
+	}
+
+	/**
+	 * @return The chains in the table, each listed once, in the order they
+	 *         were last added or joined onto
+	 */
+	public List<List<Point2D>> chains() {
+		List<List<Point2D>> list = new ArrayList<List<Point2D>>();
+		for (List<Point2D> chain : chains) {
+			if (chain != null) {
+				list.add(chain);
+			}
+		}
+		return list;
+	}
+}
@@ -0,0 +1,719 @@
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A mesh that is a height map over a rectilinear xy grid, as Terrain2STL
+ * makes them: every grid cell split into two triangles along one of its
+ * diagonals, optionally closed off with vertical walls around the edge of
+ * the grid and a flat base below. Only the grid lines and a height per grid
+ * point are kept, a small fraction of the memory of the mesh. Heights are
+ * kept as doubles, as the mesh has them, so text STLs whose heights aren't
+ * floats take this path too and contour exactly as their triangles would.
+ *
+ * Contours are traced through the grid cell by cell, splitting each cell
+ * along the same diagonal as the mesh did, so they come out the same as
+ * tracing the mesh's triangles. Where the mesh has walls, a contour that
+ * reaches the edge of the grid runs along the wall to where it comes back
+ * down, as it would on the walls' triangles.
+ *
+ * Each level is traced a band of rows at a time, so the bands can be traced
+ * in parallel, and the pieces that run between bands are then joined up by
+ * the grid edge they cross.
+ */
+public class Heightfield {
+
+	/**
+	 * Rows of cells in a band
+	 */
+	private static final int BAND_ROWS = 64;
+
+	/**
+	 * Cells in a row that are skipped together if a level misses them all
+	 */
+	private static final int BLOCK_CELLS = 32;
+
+	// grid lines, ascending
+	private final double[] xs, ys;
+	private final int cols, rows;
+	// height of grid point (i, j) at j * cols + i
+	private final double[] z;
+	// cells split from (i + 1, j) to (i, j + 1) instead of (i, j) to
+	// (i + 1, j + 1), by j * (cols - 1) + i
+	private final BitSet flipped;
+	private final boolean walls;
+	private final double base;
+	// lowest and highest point of each block of cells, blocks across
+	private final double[] blockMin, blockMax;
+	private final int blocks;
+
+	private Heightfield(double[] xs, double[] ys, double[] z, BitSet flipped, boolean walls, double base) {
+		this.xs = xs;
+		this.ys = ys;
+		cols = xs.length;
+		rows = ys.length;
+		this.z = z;
+		this.flipped = flipped;
+		this.walls = walls;
+		this.base = base;
+		blocks = (cols - 1 + BLOCK_CELLS - 1) / BLOCK_CELLS;
+		blockMin = new double[(rows - 1) * blocks];
+		blockMax = new double[(rows - 1) * blocks];
+		Arrays.fill(blockMin, Double.MAX_VALUE);
+		Arrays.fill(blockMax, -Double.MAX_VALUE);
+		for (int j = 0; j < rows - 1; j++) {
+			for (int i = 0; i < cols; i++) {
+				// a grid point is on the cells to either side of it
+				for (int b = j * blocks + Math.max(i - 1, 0) / BLOCK_CELLS; b <= j * blocks
+						+ Math.min(i, cols - 2) / BLOCK_CELLS; b++) {
+					double low = Math.min(z[j * cols + i], z[(j + 1) * cols + i]);
+					double high = Math.max(z[j * cols + i], z[(j + 1) * cols + i]);
+					blockMin[b] = Math.min(blockMin[b], low);
+					blockMax[b] = Math.max(blockMax[b], high);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the mesh is a height map over a grid, possibly with
+	 * walls and a base
+	 *
+	 * @return The height map, or null if the mesh is anything else
+	 */
+	public static Heightfield detect(TriangleMesh mesh) {
+		int n = mesh.size();
+		double[] xs = gridLines(mesh, true), ys = gridLines(mesh, false);
+		int cols = xs.length, rows = ys.length;
+		if (cols < 2 || rows < 2 || 2L * (cols - 1) * (rows - 1) > n) {
+			return null;
+		}
+		int cells = (cols - 1) * (rows - 1);
+		double[] z = new double[cols * rows];
+		Arrays.fill(z, Double.NaN);
+		// which of the cell's corners each of its triangles leaves out
+		byte[] halves = new byte[cells];
+		double base = Double.NaN;
+		int wallTriangles = 0;
+		int[] i = new int[3], j = new int[3];
+
+		for (int t = 0; t < n; t++) {
+			int v = 3 * t;
+			double ux = mesh.getX(v + 1) - mesh.getX(v), uy = mesh.getY(v + 1) - mesh.getY(v);
+			double wx = mesh.getX(v + 2) - mesh.getX(v), wy = mesh.getY(v + 2) - mesh.getY(v);
+			if (ux * wy - uy * wx == 0) {
+				// vertical, checked below once the heights are known
+				wallTriangles++;
+				continue;
+			}
+			int minI = Integer.MAX_VALUE, minJ = Integer.MAX_VALUE;
+			for (int k = 0; k < 3; k++) {
+				i[k] = line(xs, mesh.getX(v + k));
+				j[k] = line(ys, mesh.getY(v + k));
+				minI = Math.min(minI, i[k]);
+				minJ = Math.min(minJ, j[k]);
+			}
+			int corners = 0;
+			for (int k = 0; k < 3; k++) {
+				int di = i[k] - minI, dj = j[k] - minJ;
+				if (di > 1 || dj > 1) {
+					corners = -1;
+					break;
+				}
+				corners |= 1 << (di + 2 * dj);
+			}
+			if (corners < 0 || Integer.bitCount(corners) != 3) {
+				// not half a cell, so it had better be part of a flat base
+				double baseZ = mesh.getZ(v);
+				if (mesh.getZ(v + 1) != baseZ || mesh.getZ(v + 2) != baseZ
+						|| (!Double.isNaN(base) && base != baseZ)) {
+					return null;
+				}
+				base = baseZ;
+				continue;
+			}
+			int cell = minJ * (cols - 1) + minI;
+			int missing = ~corners & 0xf;
+			if ((halves[cell] & missing) != 0) {
+				return null;
+			}
+			halves[cell] |= missing;
+			for (int k = 0; k < 3; k++) {
+				double height = mesh.getZ(v + k);
+				int point = j[k] * cols + i[k];
+				if (!Double.isNaN(z[point]) && z[point] != height) {
+					return null;
+				}
+				z[point] = height;
+			}
+		}
+
+		BitSet flipped = new BitSet(cells);
+		for (int cell = 0; cell < cells; cell++) {
+			// a cell split from corner 0 to 3 has triangles leaving out 1 and
+			// 2, split from 1 to 2 they leave out 0 and 3
+			if (halves[cell] == 0b1001) {
+				flipped.set(cell);
+			} else if (halves[cell] != 0b0110) {
+				return null;
+			}
+		}
+		if (wallTriangles == 0 && Double.isNaN(base)) {
+			return new Heightfield(xs, ys, z, flipped, false, Double.NaN);
+		}
+		if (wallTriangles != 4 * (cols - 1 + rows - 1)) {
+			return null;
+		}
+
+		// two triangles on each stretch of wall, reaching from the grid's
+		// edge down to the base
+		double minHeight = Double.MAX_VALUE;
+		for (double height : z) {
+			minHeight = Math.min(minHeight, height);
+		}
+		for (int t = 0; t < n; t++) {
+			int v = 3 * t;
+			double ux = mesh.getX(v + 1) - mesh.getX(v), uy = mesh.getY(v + 1) - mesh.getY(v);
+			double wx = mesh.getX(v + 2) - mesh.getX(v), wy = mesh.getY(v + 2) - mesh.getY(v);
+			if (ux * wy - uy * wx != 0) {
+				continue;
+			}
+			for (int k = v; k < v + 3; k++) {
+				int column = line(xs, mesh.getX(k)), row = line(ys, mesh.getY(k));
+				if (column != 0 && column != cols - 1 && row != 0 && row != rows - 1) {
+					return null;
+				}
+				double height = mesh.getZ(k);
+				if (height != z[row * cols + column]) {
+					if (Double.isNaN(base)) {
+						base = height;
+					} else if (height != base) {
+						return null;
+					}
+				}
+			}
+		}
+		if (!(base < minHeight)) {
+			return null;
+		}
+		return new Heightfield(xs, ys, z, flipped, true, base);
+	}
+
+	/**
+	 * @return The distinct x or y coordinates of the mesh's vertices, in
+	 *         order
+	 */
+	private static double[] gridLines(TriangleMesh mesh, boolean x) {
+		LongIntHashMap seen = new LongIntHashMap(1024, -1);
+		double[] lines = new double[16];
+		int count = 0;
+		for (int v = 0; v < mesh.vertexCount(); v++) {
+			// + 0.0 so -0.0 and 0.0 are one line
+			double line = (x ? mesh.getX(v) : mesh.getY(v)) + 0.0;
+			if (seen.put(Double.doubleToLongBits(line), count) < 0) {
+				if (count == lines.length) {
+					lines = Arrays.copyOf(lines, 2 * count);
+				}
+				lines[count++] = line;
+			}
+		}
+		lines = Arrays.copyOf(lines, count);
+		Arrays.sort(lines);
+		return lines;
+	}
+
+	/**
+	 * @return Which of the grid lines the coordinate is on. Tries where it
+	 *         would be if they were evenly spaced before searching.
+	 */
+	private static int line(double[] lines, double coordinate) {
+		int last = lines.length - 1;
+		int guess = (int) Math.round((coordinate - lines[0]) / (lines[last] - lines[0]) * last);
+		if (guess >= 0 && guess <= last && lines[guess] == coordinate) {
+			return guess;
+		}
+		return Arrays.binarySearch(lines, coordinate);
+	}
+
+	/**
+	 * @return The number of bands of rows a level is traced in
+	 */
+	public int bandCount() {
+		return (rows - 1 + BAND_ROWS - 1) / BAND_ROWS;
+	}
+
+	/*
+	 * As a graph, the vertices are the grid points and, if there are walls,
+	 * one more at the height of the base joined to every point around the
+	 * edge. That cone has the same regions above and below every level as
+	 * the walls and base do.
+	 */
+
+	/**
+	 * @return The height of each vertex
+	 */
+	public double[] heights() {
+		double[] heights = new double[cols * rows + (walls ? 1 : 0)];
+		for (int p = 0; p < z.length; p++) {
+			heights[p] = z[p];
+		}
+		if (walls) {
+			heights[z.length] = base;
+		}
+		return heights;
+	}
+
+	/**
+	 * @return The two vertices of every edge, pair after pair: the grid
+	 *         edges along each row and column, the diagonal of each cell, and
+	 *         the ones down the walls
+	 */
+	public int[] edges() {
+		int cells = (cols - 1) * (rows - 1);
+		int ring = 2 * (cols - 1 + rows - 1);
+		int[] edges = new int[2 * ((cols - 1) * rows + cols * (rows - 1) + cells + (walls ? ring : 0))];
+		int count = 0;
+		for (int p = 0; p < z.length; p++) {
+			int i = p % cols, j = p / cols;
+			for (int kind = 0; kind < 3; kind++) {
+				if (kind != 1 && i == cols - 1 || kind != 0 && j == rows - 1) {
+					continue;
+				}
+				long edge = 3L * p + kind;
+				edges[count++] = from(edge);
+				edges[count++] = to(edge);
+			}
+		}
+		if (walls) {
+			for (int k = 0; k < ring; k++) {
+				edges[count++] = z.length;
+				edges[count++] = ringPoint(k);
+			}
+		}
+		return edges;
+	}
+
+	/**
+	 * @return The grid point closest to the point
+	 */
+	public int nearestVertex(Point2D pt) {
+		return nearest(ys, pt.getY()) * cols + nearest(xs, pt.getX());
+	}
+
+	private static int nearest(double[] lines, double coordinate) {
+		int i = Arrays.binarySearch(lines, coordinate);
+		if (i >= 0) {
+			return i;
+		}
+		int above = Math.min(-i - 1, lines.length - 1), below = Math.max(above - 1, 0);
+		return coordinate - lines[below] <= lines[above] - coordinate ? below : above;
+	}
+
+	/**
+	 * The part of one level's contour inside one band of rows
+	 */
+	static class Band {
+		// closed inside the band, ending with the first point again
+		private final List<List<Point2D>> loops = new ArrayList<List<Point2D>>();
+		// run out of the band or off the grid
+		private final List<List<Point2D>> pieces = new ArrayList<List<Point2D>>();
+		// grid edges the pieces start and end on, two per piece
+		private long[] ends = new long[16];
+
+		private void add(List<Point2D> piece, long start, long end) {
+			if (2 * pieces.size() + 2 > ends.length) {
+				ends = Arrays.copyOf(ends, 2 * ends.length);
+			}
+			ends[2 * pieces.size()] = start;
+			ends[2 * pieces.size() + 1] = end;
+			pieces.add(piece);
+		}
+	}
+
+	/*
+	 * Grid edges are numbered 3p + kind for the grid point p they start from:
+	 * kind 0 runs to p + 1, kind 1 to p + cols and kind 2 is the diagonal of
+	 * the cell whose lower left corner is p. Triangles are numbered 2c and 2c
+	 * + 1 for cell c, the first being the one on the cell's lower edge.
+	 */
+
+	/**
+	 * @return Edge e of the triangle, 0, 1 or 2
+	 */
+	private long edge(int triangle, int e) {
+		int cell = triangle >> 1;
+		int point = cell / (cols - 1) * cols + cell % (cols - 1);
+		long lower = 3L * point, upper = 3L * (point + cols), left = 3L * point + 1, right = 3L * (point + 1) + 1,
+				diagonal = 3L * point + 2;
+		if (flipped.get(cell)) {
+			return (triangle & 1) == 0 ? (e == 0 ? lower : e == 1 ? diagonal : left)
+					: (e == 0 ? right : e == 1 ? upper : diagonal);
+		}
+		return (triangle & 1) == 0 ? (e == 0 ? lower : e == 1 ? right : diagonal)
+				: (e == 0 ? diagonal : e == 1 ? upper : left);
+	}
+
+	/**
+	 * @return The lower numbered grid point at the edge's ends
+	 */
+	private int from(long edge) {
+		int point = (int) (edge / 3);
+		return edge % 3 == 2 && flipped.get(cell(point)) ? point + 1 : point;
+	}
+
+	/**
+	 * @return The higher numbered grid point at the edge's ends
+	 */
+	private int to(long edge) {
+		int point = (int) (edge / 3);
+		switch ((int) (edge % 3)) {
+		case 0:
+			return point + 1;
+		case 1:
+			return point + cols;
+		default:
+			return flipped.get(cell(point)) ? point + cols : point + cols + 1;
+		}
+	}
+
+	/**
+	 * @return The cell with the given grid point as its lower left corner
+	 */
+	private int cell(int point) {
+		return point / cols * (cols - 1) + point % cols;
+	}
+
+	/**
+	 * @return The other triangle on the edge, or -1 if it is on the edge of
+	 *         the grid
+	 */
+	private int across(long edge, int triangle) {
+		int point = (int) (edge / 3), i = point % cols, j = point / cols;
+		switch ((int) (edge % 3)) {
+		case 0: {
+			int below = j > 0 ? 2 * cell(point - cols) + 1 : -1;
+			int above = j < rows - 1 ? 2 * cell(point) : -1;
+			return triangle == below ? above : below;
+		}
+		case 1: {
+			int left = -1, right = -1;
+			if (i > 0) {
+				int cell = cell(point - 1);
+				left = flipped.get(cell) ? 2 * cell + 1 : 2 * cell;
+			}
+			if (i < cols - 1) {
+				int cell = cell(point);
+				right = flipped.get(cell) ? 2 * cell : 2 * cell + 1;
+			}
+			return triangle == left ? right : left;
+		}
+		default:
+			return triangle ^ 1;
+		}
+	}
+
+	private boolean crosses(long edge, double level) {
+		return (z[from(edge)] < level) != (z[to(edge)] < level);
+	}
+
+	/**
+	 * @return The triangle's first edge other than skip that crosses the
+	 *         level, or -1 if there is none
+	 */
+	private long crossing(int triangle, long skip, double level) {
+		for (int e = 0; e < 3; e++) {
+			long edge = edge(triangle, e);
+			if (edge != skip && crosses(edge, level)) {
+				return edge;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Where the edge crosses the level, computed from its lower
+	 *         numbered end whichever triangle asks
+	 */
+	private Point2D intersect(long edge, double level) {
+		int p = from(edge), q = to(edge);
+		double scale = (level - z[p]) / (z[q] - z[p]);
+		double x = xs[p % cols], y = ys[p / cols];
+		return new Point2D.Double(x + scale * (xs[q % cols] - x), y + scale * (ys[q / cols] - y));
+	}
+
+	private Point2D point(int point) {
+		return new Point2D.Double(xs[point % cols], ys[point / cols]);
+	}
+
+	/**
+	 * Traces the level through one band of rows
+	 */
+	Band traceBand(double level, int band) {
+		int firstRow = band * BAND_ROWS, lastRow = Math.min(rows - 1, firstRow + BAND_ROWS);
+		int first = 2 * firstRow * (cols - 1), last = 2 * lastRow * (cols - 1);
+		boolean[] walked = new boolean[last - first];
+		Band result = new Band();
+
+		for (int row = firstRow; row < lastRow; row++) {
+			for (int block = 0; block < blocks; block++) {
+				int b = row * blocks + block;
+				if (!(blockMin[b] < level && level <= blockMax[b])) {
+					continue;
+				}
+				int firstCell = row * (cols - 1) + block * BLOCK_CELLS;
+				int lastCell = Math.min((row + 1) * (cols - 1), firstCell + BLOCK_CELLS);
+				for (int cell = firstCell; cell < lastCell; cell++) {
+					int p = row * cols + cell % (cols - 1);
+					boolean below = z[p] < level;
+					if (below == z[p + 1] < level && below == z[p + cols] < level
+							&& below == z[p + cols + 1] < level) {
+						// all four corners on the same side
+						continue;
+					}
+					for (int t = 2 * cell; t < 2 * cell + 2; t++) {
+						if (!walked[t - first]) {
+							trace(t, level, walked, first, last, result);
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Follows the contour through the triangle, if it crosses it, both ways
+	 * until it closes or leaves the band, and adds it to the band
+	 */
+	private void trace(int t, double level, boolean[] walked, int first, int last, Band band) {
+		long in = crossing(t, -1, level);
+		if (in < 0) {
+			return;
+		}
+		walked[t - first] = true;
+		long out = crossing(t, in, level);
+		List<Point2D> chain = new ArrayList<Point2D>();
+		chain.add(intersect(in, level));
+		chain.add(intersect(out, level));
+		long end = walk(t, out, chain, level, walked, first, last);
+		if (end < 0) {
+			// came back around to t, ending on the first point again
+			band.loops.add(chain);
+			return;
+		}
+		List<Point2D> before = new ArrayList<Point2D>();
+		long start = walk(t, in, before, level, walked, first, last);
+		Collections.reverse(before);
+		before.addAll(chain);
+		band.add(before, start, end);
+	}
+
+	/**
+	 * Walks out of the triangle through the edge, adding the point where the
+	 * contour leaves each triangle it enters
+	 *
+	 * @return The edge the walk left the band by, or -1 if it came back to a
+	 *         triangle already walked through
+	 */
+	private long walk(int triangle, long out, List<Point2D> chain, double level, boolean[] walked, int first,
+			int last) {
+		while (true) {
+			int next = across(out, triangle);
+			if (next < first || next >= last) {
+				return out;
+			}
+			if (walked[next - first]) {
+				return -1;
+			}
+			walked[next - first] = true;
+			out = crossing(next, out, level);
+			chain.add(intersect(out, level));
+			triangle = next;
+		}
+	}
+
+	/**
+	 * Joins the pieces of the level's contour found in each band, in order
+	 *
+	 * @return The chains of the contour, each listed once. Closed chains end
+	 *         with their first point again.
+	 */
+	List<List<Point2D>> stitch(double level, List<Band> bands) {
+		List<List<Point2D>> chains = new ArrayList<List<Point2D>>();
+		List<List<Point2D>> pieces = new ArrayList<List<Point2D>>();
+		int endCount = 0;
+		for (Band band : bands) {
+			chains.addAll(band.loops);
+			pieces.addAll(band.pieces);
+			endCount += 2 * band.pieces.size();
+		}
+		long[] ends = new long[endCount];
+		int offset = 0;
+		for (Band band : bands) {
+			System.arraycopy(band.ends, 0, ends, offset, 2 * band.pieces.size());
+			offset += 2 * band.pieces.size();
+		}
+
+		// pair up the ends on the same grid edge, which are between bands
+		int[] partner = new int[endCount];
+		Arrays.fill(partner, -1);
+		LongIntHashMap byEdge = new LongIntHashMap(endCount, -1);
+		for (int e = 0; e < endCount; e++) {
+			int other = byEdge.put(ends[e], e);
+			if (other >= 0) {
+				partner[e] = other;
+				partner[other] = e;
+			}
+		}
+
+		// the rest are on the edge of the grid. With walls, each is joined
+		// along the wall to the next place the wall crosses the level
+		List<List<Point2D>> bridges = new ArrayList<List<Point2D>>(
+				Collections.<List<Point2D>>nCopies(endCount, null));
+		int ring = 2 * (cols - 1 + rows - 1);
+		if (walls && level > base) {
+			boolean edgeReached = false;
+			for (int e = 0; e < endCount; e++) {
+				if (partner[e] >= 0) {
+					continue;
+				}
+				edgeReached = true;
+				int position = ringPosition(ends[e]);
+				if (z[ringPoint(position)] >= level) {
+					// the wall goes up at the near end, this is reached from
+					// the other end
+					continue;
+				}
+				List<Point2D> bridge = new ArrayList<Point2D>();
+				int p = (position + 1) % ring;
+				while (z[ringPoint(p)] >= level) {
+					bridge.add(point(ringPoint(p)));
+					p = (p + 1) % ring;
+				}
+				int other = byEdge.get(ringEdge((p - 1 + ring) % ring));
+				partner[e] = other;
+				partner[other] = e;
+				bridges.set(e, bridge);
+				List<Point2D> back = new ArrayList<Point2D>(bridge);
+				Collections.reverse(back);
+				bridges.set(other, back);
+			}
+			if (!edgeReached && z[ringPoint(0)] >= level) {
+				// nothing comes up to the edge, the whole wall is above
+				List<Point2D> loop = new ArrayList<Point2D>();
+				for (int p = 0; p <= ring; p++) {
+					loop.add(point(ringPoint(p % ring)));
+				}
+				chains.add(loop);
+			}
+		}
+
+		// follow the pairs, starting from loose ends and then around loops
+		boolean[] used = new boolean[pieces.size()];
+		for (int pass = 0; pass < 2; pass++) {
+			for (int e = 0; e < endCount; e++) {
+				if (used[e / 2] || (pass == 0 && partner[e] >= 0)) {
+					continue;
+				}
+				List<Point2D> chain = new ArrayList<Point2D>();
+				int start = e;
+				int enter = e;
+				while (true) {
+					int piece = enter / 2;
+					used[piece] = true;
+					List<Point2D> points = pieces.get(piece);
+					int exit = enter ^ 1;
+					if ((enter & 1) == 0) {
+						chain.addAll(points.subList(chain.isEmpty() ? 0 : 1, points.size()));
+					} else {
+						for (int k = points.size() - (chain.isEmpty() ? 1 : 2); k >= 0; k--) {
+							chain.add(points.get(k));
+						}
+					}
+					int next = partner[exit];
+					if (next < 0) {
+						break;
+					}
+					if (bridges.get(exit) != null) {
+						chain.addAll(bridges.get(exit));
+						// the next piece starts off the wall, not where this
+						// one ended
+						chain.add(pieces.get(next / 2).get((next & 1) == 0 ? 0 : pieces.get(next / 2).size() - 1));
+					}
+					if (next == start) {
+						break;
+					}
+					enter = next;
+				}
+				chains.add(chain);
+			}
+		}
+		return chains;
+	}
+
+	/**
+	 * Traces the level through the whole grid, one band after another
+	 */
+	public List<List<Point2D>> trace(double level) {
+		List<Band> bands = new ArrayList<Band>();
+		for (int band = 0; band < bandCount(); band++) {
+			bands.add(traceBand(level, band));
+		}
+		return stitch(level, bands);
+	}
+
+	/*
+	 * The grid points around the edge are numbered from the lower left
+	 * corner, along the bottom, up the right side, back along the top and
+	 * down the left side. Edge k of the ring runs from point k to point k + 1.
+	 */
+
+	private int ringPoint(int k) {
+		int width = cols - 1, height = rows - 1;
+		if (k < width) {
+			return k;
+		}
+		k -= width;
+		if (k < height) {
+			return k * cols + width;
+		}
+		k -= height;
+		if (k < width) {
+			return height * cols + width - k;
+		}
+		k -= width;
+		return (height - k) * cols;
+	}
+
+	/**
+	 * @return The grid edge that is edge k of the ring
+	 */
+	private long ringEdge(int k) {
+		int point = ringPoint(k), width = cols - 1, height = rows - 1;
+		if (k < width) {
+			return 3L * point;
+		}
+		if (k < width + height) {
+			return 3L * point + 1;
+		}
+		if (k < 2 * width + height) {
+			return 3L * (point - 1);
+		}
+		return 3L * (point - cols) + 1;
+	}
+
+	/**
+	 * @return Which edge of the ring the grid edge is
+	 */
+	private int ringPosition(long edge) {
+		int point = (int) (edge / 3), i = point % cols, j = point / cols;
+		int width = cols - 1, height = rows - 1;
+		if (edge % 3 == 0) {
+			return j == 0 ? i : 2 * width + height - i - 1;
+		}
+		return i == width ? width + j : 2 * width + 2 * height - j - 1;
+	}
+}
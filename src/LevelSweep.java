@@ -0,0 +1,125 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Sweeps a horizontal plane up through a mesh, keeping the set of triangles
+ * whose z range spans the plane's current level. Triangles are sorted by
+ * their lowest z once; as the plane moves up they enter when it reaches
+ * their lowest z and leave once it passes their highest. Contouring many
+ * levels in ascending order then touches each triangle only at the levels it
+ * actually spans, with no index lookups in between.
+ */
+public class LevelSweep {
+
+	private final double[] zMin, zMax;
+	// triangle ids by lowest z
+	private final int[] byZMin;
+
+	// the next triangle in byZMin to enter
+	private int next = 0;
+	private int[] active = new int[64];
+	private int activeCount = 0;
+	private double level = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Sorts the mesh's triangles for sweeping, starting below all of them
+	 */
+	public LevelSweep(TriangleMesh mesh) {
+		zMin = new double[mesh.size()];
+		zMax = new double[mesh.size()];
+		for (int t = 0; t < mesh.size(); t++) {
+			zMin[t] = mesh.getZMin(t);
+			zMax[t] = mesh.getZMax(t);
+		}
+		byZMin = StaticIntervalTree.sortedIds(zMin, Runtime.getRuntime().availableProcessors() > 1);
+	}
+
+	/**
+	 * Makes another sweep over the same triangles, sharing the sorted order
+	 * but with its own plane, starting below all of them. Sweeps made this
+	 * way can run on different threads.
+	 */
+	public LevelSweep(LevelSweep other) {
+		zMin = other.zMin;
+		zMax = other.zMax;
+		byZMin = other.byZMin;
+	}
+
+	/**
+	 * Moves the plane straight to z, finding the triangles spanning it with
+	 * one stabbing query instead of sweeping up from the bottom
+	 *
+	 * @param index
+	 *            z index over the same triangles
+	 */
+	public void startAt(double z, StaticIntervalTree index) {
+		activeCount = 0;
+		index.query(z, this::add);
+		// everything starting at or below z has been dealt with
+		int low = 0, high = byZMin.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (zMin[byZMin[mid]] <= z) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		next = low;
+		level = z;
+	}
+
+	/**
+	 * Moves the plane up to z
+	 *
+	 * @throws IllegalArgumentException
+	 *             Thrown if z is below the plane's current level
+	 */
+	public void advanceTo(double z) {
+		if (z < level) {
+			throw new IllegalArgumentException("Can't sweep down from " + level + " to " + z);
+		}
+		// drop the triangles that end below z, order doesn't matter
+		for (int i = 0; i < activeCount;) {
+			if (zMax[active[i]] < z) {
+				active[i] = active[--activeCount];
+			} else {
+				i++;
+			}
+		}
+		// take in the ones that start at or below z, skipping any that end
+		// below it as well
+		while (next < byZMin.length && zMin[byZMin[next]] <= z) {
+			int t = byZMin[next++];
+			if (zMax[t] >= z) {
+				add(t);
+			}
+		}
+		level = z;
+	}
+
+	private void add(int triangle) {
+		if (activeCount == active.length) {
+			active = Arrays.copyOf(active, 2 * activeCount);
+		}
+		active[activeCount++] = triangle;
+	}
+
+	/**
+	 * Hands every triangle whose z range contains the current level to the
+	 * visitor
+	 */
+	public void forEachActive(IntConsumer visitor) {
+		for (int i = 0; i < activeCount; i++) {
+			visitor.accept(active[i]);
+		}
+	}
+
+	/**
+	 * @return The number of triangles whose z range contains the current
+	 *         level
+	 */
+	public int activeCount() {
+		return activeCount;
+	}
+}
@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * A hash map from long keys to int values that stores both in primitive
+ * arrays, so nothing is boxed or allocated per entry. Open addressing with
+ * linear probing; the table doubles when it gets over half full.
+ */
+public class LongIntHashMap {
+
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size = 0;
+	private final int missing;
+
+	/**
+	 * @param capacity
+	 *            number of entries to make room for up front
+	 * @param missing
+	 *            value get() returns for keys that aren't in the map
+	 */
+	public LongIntHashMap(int capacity, int missing) {
+		int slots = Integer.highestOneBit(Math.max(2 * capacity, 16) - 1) << 1;
+		keys = new long[slots];
+		values = new int[slots];
+		used = new boolean[slots];
+		this.missing = missing;
+	}
+
+	private static int hash(long key, int mask) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+
+	/**
+	 * @return The slot holding key, or the empty slot where it would go
+	 */
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int i = hash(key, mask);
+		while (used[i] && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * @return The value for key, or the missing value if there is none
+	 */
+	public int get(long key) {
+		int i = slot(key);
+		return used[i] ? values[i] : missing;
+	}
+
+	public boolean containsKey(long key) {
+		return used[slot(key)];
+	}
+
+	/**
+	 * @return The value key had before, or the missing value if it had none
+	 */
+	public int put(long key, int value) {
+		int i = slot(key);
+		if (used[i]) {
+			int old = values[i];
+			values[i] = value;
+			return old;
+		}
+		used[i] = true;
+		keys[i] = key;
+		values[i] = value;
+		if (++size > keys.length / 2) {
+			grow();
+		}
+		return missing;
+	}
+
+	/**
+	 * @return The value key had, or the missing value if it wasn't in the map
+	 */
+	public int remove(long key) {
+		int i = slot(key);
+		if (!used[i]) {
+			return missing;
+		}
+		int old = values[i];
+		// shift back any later entry whose probe run went through slot i
+		int mask = keys.length - 1;
+		for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask) {
+			int home = hash(keys[j], mask);
+			if (j > i ? home <= i || home > j : home <= i && home > j) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		used[i] = false;
+		size--;
+		return old;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		keys = new long[2 * oldKeys.length];
+		values = new int[keys.length];
+		used = new boolean[keys.length];
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldUsed[j]) {
+				int i = slot(oldKeys[j]);
+				used[i] = true;
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		Arrays.fill(used, false);
+		size = 0;
+	}
+}
@@ -1,5 +1,11 @@
 import java.awt.Dimension;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.swing.BoxLayout;
 import javax.swing.DefaultListModel;
@@ -10,9 +16,20 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 public class MenuPanel extends JPanel {
 
+    /**
+     * Told on the event dispatch thread whenever the levels shown change
+     */
+    public interface LevelListener {
+        void levelsChanged();
+    }
+
     DefaultListModel<Double> listModel;
 
     JList<Double> list;
@@ -23,14 +40,160 @@ public class MenuPanel extends JPanel {
 
     JLabel title;
 
+    private final TopoMap topoMap;
+
+    private final LevelListener listener;
+
+    // how long typing has to pause before the level typed is contoured, in
+    // milliseconds
+    private static final int PREVIEW_DELAY = 300;
+
+    // contours the level being typed, so it's ready by the time it's added
+    private LevelWorker preview;
+
+    // the level typed last, and what starts its preview once typing pauses
+    private double previewLevel;
+    private final Timer previewTimer = new Timer(PREVIEW_DELAY, e -> startPreview());
+
+    // levels added that are still being contoured
+    private final Map<Double, LevelWorker> adding = new HashMap<Double, LevelWorker>();
+
+    /**
+     * A list of levels that only changes itself
+     */
     public MenuPanel(final List<Double> majorContours) {
+        this(majorContours, null, null);
+    }
+
+    /**
+     * @param topoMap
+     *            shows a level when it's added and stops showing it when it's
+     *            removed. Levels are contoured in the background.
+     * @param listener
+     *            told once the levels shown have changed
+     */
+    public MenuPanel(final List<Double> majorContours, TopoMap topoMap, LevelListener listener) {
         super();
+        this.topoMap = topoMap;
+        this.listener = listener;
 
         setLayout(new BoxLayout(this, BoxLayout.PAGE_AXIS));
+        previewTimer.setRepeats(false);
 
         setUpContourSection(majorContours);
     }
 
+    /**
+     * Contours a level off the event dispatch thread, and shows it once done
+     * if it has been added by then
+     */
+    private class LevelWorker extends SwingWorker<Set<Contour>, Void> {
+
+        private final double level;
+
+        private boolean show = false;
+
+        LevelWorker(double level) {
+            this.level = level;
+        }
+
+        @Override
+        protected Set<Contour> doInBackground() {
+            return topoMap.computeLevel(level);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                get();
+            } catch (InterruptedException | ExecutionException ex) {
+                Logger.getLogger(MenuPanel.class.getName()).log(Level.WARNING, "Could not contour " + level, ex);
+                return;
+            }
+            if (show) {
+                adding.remove(level);
+                showLevel(level);
+            }
+        }
+    }
+
+    private void showLevel(double level) {
+        topoMap.addLevel(level);
+        listener.levelsChanged();
+    }
+
+    /**
+     * Contours whatever level is typed once typing pauses, dropping the one
+     * before unless it's the same level
+     */
+    private void typed() {
+        double level;
+        try {
+            level = Double.parseDouble(newContour.getText());
+        } catch (NumberFormatException ex) {
+            previewTimer.stop();
+            cancelPreview();
+            return;
+        }
+        if (preview != null && preview.level == level) {
+            // already on it
+            previewTimer.stop();
+            return;
+        }
+        cancelPreview();
+        previewLevel = level;
+        previewTimer.restart();
+    }
+
+    private void startPreview() {
+        preview = new LevelWorker(previewLevel);
+        preview.execute();
+    }
+
+    private void cancelPreview() {
+        if (preview != null) {
+            preview.cancel(true);
+            preview = null;
+        }
+    }
+
+    /**
+     * Shows the level once it's contoured, using the one already going if
+     * it was typed
+     */
+    private void add(double level) {
+        previewTimer.stop();
+        LevelWorker worker = preview;
+        if (worker != null && worker.level == level && !worker.isCancelled()) {
+            preview = null;
+        } else {
+            worker = new LevelWorker(level);
+            worker.execute();
+        }
+        if (worker.isDone()) {
+            showLevel(level);
+        } else {
+            worker.show = true;
+            adding.put(level, worker);
+        }
+    }
+
+    private void remove(double level) {
+        if (listModel.contains(level)) {
+            // still listed again
+            return;
+        }
+        LevelWorker worker = adding.remove(level);
+        if (worker != null) {
+            worker.cancel(true);
+        }
+        topoMap.removeLevel(level);
+        listener.levelsChanged();
+    }
+
     private void setUpContourSection(List<Double> majorContours) {
         title = new JLabel("Major contours");
         add(title);
@@ -50,7 +213,10 @@ public class MenuPanel extends JPanel {
         removeButton = new JButton("Remove contour");
         removeButton.addActionListener(e -> {
             int index = list.getSelectedIndex();
-            listModel.remove(index);
+            double removed = listModel.remove(index);
+            if (topoMap != null) {
+                remove(removed);
+            }
 
             int size = listModel.getSize();
 
@@ -70,6 +236,24 @@ public class MenuPanel extends JPanel {
         add(removeButton);
 
         newContour = new JTextField();
+        if (topoMap != null) {
+            newContour.getDocument().addDocumentListener(new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) {
+                    typed();
+                }
+
+                @Override
+                public void removeUpdate(DocumentEvent e) {
+                    typed();
+                }
+
+                @Override
+                public void changedUpdate(DocumentEvent e) {
+                    typed();
+                }
+            });
+        }
         add(newContour);
         addButton = new JButton("Add contour");
         addButton.addActionListener(e -> {
@@ -90,6 +274,9 @@ public class MenuPanel extends JPanel {
                 }
             }
             listModel.insertElementAt(contour, i);
+            if (topoMap != null) {
+                add(contour);
+            }
 
             // Reset the text field.
             newContour.requestFocusInWindow();
@@ -0,0 +1,161 @@
+import java.util.Arrays;
+
+/**
+ * How the regions below a level (or above it) merge as the level moves: a
+ * leaf where a region first appears, at a local minimum (maximum), and a node
+ * where regions join, at a saddle. Only those critical points are kept; every
+ * vertex knows the last one below it on its region's way up.
+ *
+ * Which level two vertices' regions join at is the lowest common ancestor of
+ * their nodes, found in logarithmic time by jumping up the tree in powers of
+ * two. The number of regions at a level is a binary search over the
+ * critical heights.
+ *
+ * Built by ContourTree.
+ */
+public class MergeTree {
+
+	// +1 for regions below a level, -1 for regions above it, by which
+	// heights were negated while building
+	private final int sign;
+	private final double[] height;
+	// ancestors 2^k levels up, roots are their own
+	private final int[][] up;
+	private final int[] depth;
+	// the node each vertex is on the arc above, and the vertices' heights
+	private final int[] nodeOf;
+	private final double[] vertexHeight;
+	// regions just past each node, in the order built
+	private final int[] regions;
+
+	/**
+	 * @param height
+	 *            of each node, as built, ascending
+	 * @param parent
+	 *            of each node, -1 for roots. Parents come after their
+	 *            children.
+	 * @param children
+	 *            number of children of each node
+	 * @param nodeOf
+	 *            node under each vertex
+	 * @param vertexHeight
+	 *            height of each vertex, not negated
+	 * @param sign
+	 *            +1 if the heights are as they are, -1 if they were negated to
+	 *            build a tree of regions above a level
+	 */
+	MergeTree(double[] height, int[] parent, int[] children, int[] nodeOf, double[] vertexHeight, int sign) {
+		int nodes = height.length;
+		this.sign = sign;
+		this.height = height;
+		this.nodeOf = nodeOf;
+		this.vertexHeight = vertexHeight;
+		depth = new int[nodes];
+		int levels = 1;
+		while ((1 << levels) < nodes) {
+			levels++;
+		}
+		up = new int[levels][nodes];
+		// parents come later, so children are done last to first
+		for (int node = nodes - 1; node >= 0; node--) {
+			up[0][node] = parent[node] < 0 ? node : parent[node];
+			depth[node] = parent[node] < 0 ? 0 : depth[parent[node]] + 1;
+		}
+		for (int k = 1; k < levels; k++) {
+			for (int node = 0; node < nodes; node++) {
+				up[k][node] = up[k - 1][up[k - 1][node]];
+			}
+		}
+
+		// a leaf adds a region, a node joining c regions takes away c - 1
+		regions = new int[nodes];
+		int count = 0;
+		for (int node = 0; node < nodes; node++) {
+			count += children[node] == 0 ? 1 : 1 - children[node];
+			regions[node] = count;
+		}
+	}
+
+	/**
+	 * @return The number of regions below z, or at or above z for a tree of
+	 *         regions above
+	 */
+	public int regionsAt(double z) {
+		// nodes strictly below z, or in negated heights at or below -z
+		int passed = sign > 0 ? countBelow(height, z, false) : countBelow(height, -z, true);
+		return passed == 0 ? 0 : regions[passed - 1];
+	}
+
+	/**
+	 * @return The number of leading values less than z, or at most z if
+	 *         inclusive
+	 */
+	static int countBelow(double[] sorted, double z, boolean inclusive) {
+		int low = 0, high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] < z || (inclusive && sorted[mid] == z)) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return The heights of the critical points, ascending
+	 */
+	public double[] criticalHeights() {
+		double[] heights = new double[height.length];
+		for (int node = 0; node < heights.length; node++) {
+			heights[node] = sign * height[node];
+		}
+		Arrays.sort(heights);
+		return heights;
+	}
+
+	/**
+	 * @return The level at which the two vertices are first in one region:
+	 *         for regions below a level, they are once the level is above it;
+	 *         for regions above, once it is at or below it. Infinite (with
+	 *         the sign of the direction) if they never are.
+	 */
+	public double joinHeight(int a, int b) {
+		int lca = lca(nodeOf[a], nodeOf[b]);
+		if (lca < 0) {
+			return sign * Double.POSITIVE_INFINITY;
+		}
+		// both have to be in a region at all, which they may not be yet
+		// where their arcs meet
+		double join = Math.max(height[lca], Math.max(sign * vertexHeight[a], sign * vertexHeight[b]));
+		return sign * join;
+	}
+
+	/**
+	 * @return The lowest node that both nodes are under, or -1 if they are in
+	 *         different trees
+	 */
+	private int lca(int a, int b) {
+		if (depth[a] < depth[b]) {
+			int swap = a;
+			a = b;
+			b = swap;
+		}
+		for (int k = up.length - 1; k >= 0; k--) {
+			if (depth[a] - (1 << k) >= depth[b]) {
+				a = up[k][a];
+			}
+		}
+		if (a == b) {
+			return a;
+		}
+		for (int k = up.length - 1; k >= 0; k--) {
+			if (up[k][a] != up[k][b]) {
+				a = up[k][a];
+				b = up[k][b];
+			}
+		}
+		return up[0][a] == up[0][b] && up[0][a] != a ? up[0][a] : -1;
+	}
+}
@@ -0,0 +1,184 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A parsed mesh and its z index, saved in a sidecar file next to the STL they
+ * came from (file.stl.meshcache) so the next open can skip parsing and index
+ * building. The cache records the STL's size and modification time and is
+ * only used while both still match.
+ *
+ * Layout, big-endian:
+ *
+ * <pre>
+ * long   magic
+ * int    version
+ * long   STL size, long STL modification time (ms)
+ * int    triangle count n
+ * double minX, minY, minZ, maxX, maxY, maxZ
+ * double x[3n], y[3n], z[3n]
+ * the z index, as written by StaticIntervalTree.write
+ * </pre>
+ */
+public class MeshCache {
+
+	private static final long MAGIC = 0x544f504f4d455348L; // "TOPOMESH"
+
+	/**
+	 * Bump whenever the layout or the way the index is built changes, so old
+	 * caches get rebuilt instead of misread
+	 */
+	private static final int VERSION = 2;
+
+	private static final String SUFFIX = ".meshcache";
+
+	private static final int HEADER_SIZE = 8 + 4 + 8 + 8 + 4 + 6 * 8;
+
+	/**
+	 * Number of doubles mapped at a time when reading a column, 1 GB
+	 */
+	private static final int WINDOW_DOUBLES = 1 << 27;
+
+	private final TriangleMesh mesh;
+	private final StaticIntervalTree zIndex;
+
+	public MeshCache(TriangleMesh mesh, StaticIntervalTree zIndex) {
+		this.mesh = mesh;
+		this.zIndex = zIndex;
+	}
+
+	public TriangleMesh getMesh() {
+		return mesh;
+	}
+
+	public StaticIntervalTree getZIndex() {
+		return zIndex;
+	}
+
+	/**
+	 * @return The sidecar cache file for the given STL file
+	 */
+	public static Path cachePath(Path stlPath) {
+		return stlPath.resolveSibling(stlPath.getFileName() + SUFFIX);
+	}
+
+	/**
+	 * Loads the cache for the given STL file
+	 *
+	 * @return The cached mesh and index, or null if there is no cache or it is
+	 *         stale, from another version or unreadable
+	 */
+	public static MeshCache read(Path stlPath) {
+		Path cachePath = cachePath(stlPath);
+		if (!Files.isRegularFile(cachePath)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+			BasicFileAttributes source = Files.readAttributes(stlPath, BasicFileAttributes.class);
+			if (channel.size() < HEADER_SIZE) {
+				return null;
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getLong() != MAGIC || header.getInt() != VERSION || header.getLong() != source.size()
+					|| header.getLong() != source.lastModifiedTime().toMillis()) {
+				return null;
+			}
+			int triangles = header.getInt();
+			double[] bounds = new double[6];
+			for (int i = 0; i < 6; i++) {
+				bounds[i] = header.getDouble();
+			}
+			long columnBytes = 3L * triangles * Double.BYTES;
+			if (triangles < 0 || 3L * triangles > Integer.MAX_VALUE - 8
+					|| channel.size() < HEADER_SIZE + 3 * columnBytes) {
+				return null;
+			}
+			double[] x = readColumn(channel, HEADER_SIZE, 3 * triangles);
+			double[] y = readColumn(channel, HEADER_SIZE + columnBytes, 3 * triangles);
+			double[] z = readColumn(channel, HEADER_SIZE + 2 * columnBytes, 3 * triangles);
+			TriangleMesh mesh = triangles == 0 ? new TriangleMesh() : new TriangleMesh(x, y, z, triangles);
+			mesh.setBounds(bounds);
+
+			channel.position(HEADER_SIZE + 3 * columnBytes);
+			DataInputStream in = new DataInputStream(
+					new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+			StaticIntervalTree zIndex = StaticIntervalTree.read(in);
+			return new MeshCache(mesh, zIndex);
+		} catch (IOException | BufferUnderflowException | IllegalArgumentException ex) {
+			Logger.getLogger(MeshCache.class.getName()).log(Level.WARNING, "Ignoring unreadable cache " + cachePath,
+					ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Maps a column of doubles a window at a time and copies it out
+	 */
+	private static double[] readColumn(FileChannel channel, long position, int length) throws IOException {
+		double[] column = new double[length];
+		for (int start = 0; start < length; start += WINDOW_DOUBLES) {
+			int count = Math.min(WINDOW_DOUBLES, length - start);
+			channel.map(FileChannel.MapMode.READ_ONLY, position + (long) start * Double.BYTES,
+					(long) count * Double.BYTES).asDoubleBuffer().get(column, start, count);
+		}
+		return column;
+	}
+
+	/**
+	 * Saves the mesh and index as the cache for the given STL file. The cache
+	 * is written to a temporary file first and moved into place, so a reader
+	 * never sees half of one.
+	 *
+	 * @throws IOException
+	 *             Thrown if the cache could not be written, for example in a
+	 *             read-only directory
+	 */
+	public void write(Path stlPath) throws IOException {
+		BasicFileAttributes source = Files.readAttributes(stlPath, BasicFileAttributes.class);
+		Path cachePath = cachePath(stlPath);
+		Path temp = cachePath.resolveSibling(cachePath.getFileName() + ".tmp");
+		try {
+			try (OutputStream file = Files.newOutputStream(temp);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+				out.writeLong(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(source.size());
+				out.writeLong(source.lastModifiedTime().toMillis());
+				out.writeInt(mesh.size());
+				double[][] bounds = mesh.getBounds();
+				for (double[] corner : bounds) {
+					for (double d : corner) {
+						out.writeDouble(d);
+					}
+				}
+				for (int v = 0; v < mesh.vertexCount(); v++) {
+					out.writeDouble(mesh.getX(v));
+				}
+				for (int v = 0; v < mesh.vertexCount(); v++) {
+					out.writeDouble(mesh.getY(v));
+				}
+				for (int v = 0; v < mesh.vertexCount(); v++) {
+					out.writeDouble(mesh.getZ(v));
+				}
+				zIndex.write(out);
+			}
+			Files.move(temp, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+}
@@ -0,0 +1,315 @@
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Which triangles of a mesh share which edges. STL stores every triangle's
+ * corners separately, so corners at exactly the same position are first
+ * matched up into shared vertices, then triangles with two vertices in common
+ * are linked across that edge.
+ *
+ * With that, a contour can be traced by walking from each triangle it crosses
+ * into the neighbor across the edge it leaves by, instead of matching up
+ * segment ends by their coordinates. A vertex counts as below a level only if
+ * its z is strictly less, so a contour never runs through a vertex and every
+ * crossing triangle has exactly two crossing edges. The crossing point on an
+ * edge is always computed from its lower-numbered vertex, so both triangles
+ * sharing the edge agree on it exactly.
+ */
+public class MeshTopology {
+
+	private final TriangleMesh mesh;
+	// shared vertex of each corner, and a corner at each shared vertex
+	private final int[] vertex;
+	private final int[] corner;
+	// for each corner c of triangle t, the edge from c to the next corner of t
+	// is the edge starting at across[c] in the neighboring triangle, or -1 if
+	// no triangle is on the other side
+	private final int[] across;
+	private final boolean manifold;
+	// the vertices by x and y, made on the first nearestVertex
+	private PointGrid grid;
+
+	// triangles already walked through, per thread
+	private static final ThreadLocal<Visited> visited = ThreadLocal.withInitial(Visited::new);
+
+	private static class Visited {
+		private int[] stamps = new int[0];
+		private int stamp = 0;
+
+		/**
+		 * Starts a new walk over a mesh of the given size, with nothing
+		 * visited
+		 */
+		private void reset(int size) {
+			if (stamps.length < size) {
+				stamps = new int[size];
+				stamp = 0;
+			}
+			if (++stamp == 0) {
+				Arrays.fill(stamps, 0);
+				stamp = 1;
+			}
+		}
+	}
+
+	public MeshTopology(TriangleMesh mesh) {
+		this.mesh = mesh;
+		int corners = mesh.vertexCount();
+		vertex = new int[corners];
+		int vertices = matchCorners();
+		corner = new int[vertices];
+		for (int c = corners - 1; c >= 0; c--) {
+			corner[vertex[c]] = c;
+		}
+
+		across = new int[corners];
+		Arrays.fill(across, -1);
+		boolean manifold = true;
+		LongIntHashMap edges = new LongIntHashMap(corners, -1);
+		for (int c = 0; c < corners; c++) {
+			int a = vertex[c], b = vertex[next(c)];
+			long key = (long) Math.min(a, b) << 32 | Math.max(a, b);
+			int other = edges.put(key, c);
+			// a triangle with a repeated vertex meets itself, leave that out
+			if (other >= 0 && other / 3 != c / 3) {
+				if (across[other] >= 0) {
+					// a third triangle on the edge
+					manifold = false;
+				}
+				across[other] = c;
+				across[c] = other;
+			}
+		}
+		this.manifold = manifold;
+	}
+
+	/**
+	 * Numbers the distinct corner positions, filling in vertex
+	 *
+	 * @return The number of distinct positions
+	 */
+	private int matchCorners() {
+		int corners = vertex.length;
+		int[] table = new int[Integer.highestOneBit(Math.max(2 * corners, 16) - 1) << 1];
+		Arrays.fill(table, -1);
+		int mask = table.length - 1;
+		int vertices = 0;
+		for (int c = 0; c < corners; c++) {
+			double x = mesh.getX(c), y = mesh.getY(c), z = mesh.getZ(c);
+			// + 0.0 so that -0.0 hashes like 0.0, which it equals
+			long h = Double.doubleToLongBits(x + 0.0);
+			h = h * 31 + Double.doubleToLongBits(y + 0.0);
+			h = h * 31 + Double.doubleToLongBits(z + 0.0);
+			h *= 0x9E3779B97F4A7C15L;
+			int i = (int) (h ^ (h >>> 32)) & mask;
+			while (table[i] >= 0) {
+				int d = table[i];
+				if (mesh.getX(d) == x && mesh.getY(d) == y && mesh.getZ(d) == z) {
+					break;
+				}
+				i = (i + 1) & mask;
+			}
+			if (table[i] < 0) {
+				table[i] = c;
+				vertex[c] = vertices++;
+			} else {
+				vertex[c] = vertex[table[i]];
+			}
+		}
+		return vertices;
+	}
+
+	private static int next(int corner) {
+		return corner % 3 == 2 ? corner - 2 : corner + 1;
+	}
+
+	/**
+	 * @return Whether every edge has at most two triangles on it. Contours
+	 *         can only be traced by walking if so.
+	 */
+	public boolean isManifold() {
+		return manifold;
+	}
+
+	/**
+	 * @return The number of distinct vertices in the mesh
+	 */
+	public int vertexCount() {
+		return corner.length;
+	}
+
+	/**
+	 * @return The z of each distinct vertex
+	 */
+	public double[] heights() {
+		double[] heights = new double[corner.length];
+		for (int v = 0; v < heights.length; v++) {
+			heights[v] = mesh.getZ(corner[v]);
+		}
+		return heights;
+	}
+
+	/**
+	 * @return The two distinct vertices of every edge of the mesh, pair after
+	 *         pair, each edge once where triangles are linked across it
+	 */
+	public int[] edges() {
+		int[] edges = new int[2 * vertex.length];
+		int count = 0;
+		for (int c = 0; c < vertex.length; c++) {
+			if (across[c] < c) {
+				edges[count++] = vertex[c];
+				edges[count++] = vertex[next(c)];
+			}
+		}
+		return Arrays.copyOf(edges, count);
+	}
+
+	/**
+	 * @return The vertex closest to the point in x and y, the highest if
+	 *         several are, such as the top and bottom of a wall
+	 */
+	public int nearestVertex(Point2D pt) {
+		PointGrid grid = grid();
+		int nearest = grid.nearest(pt.getX(), pt.getY(), Double.POSITIVE_INFINITY);
+		if (nearest < 0) {
+			return -1;
+		}
+		// the highest of the vertices just as near, then the lowest numbered
+		double best = pt.distanceSq(mesh.getX(corner[nearest]), mesh.getY(corner[nearest]));
+		int[] highest = { nearest };
+		grid.within(pt.getX(), pt.getY(), Math.nextUp(Math.sqrt(best)), v -> {
+			int c = corner[v];
+			if (pt.distanceSq(mesh.getX(c), mesh.getY(c)) == best) {
+				double z = mesh.getZ(c), highestZ = mesh.getZ(corner[highest[0]]);
+				if (z > highestZ || z == highestZ && v < highest[0]) {
+					highest[0] = v;
+				}
+			}
+		});
+		return highest[0];
+	}
+
+	/**
+	 * @return The grid of vertices, made the first time it is needed
+	 */
+	private synchronized PointGrid grid() {
+		if (grid == null) {
+			double[] xy = new double[2 * corner.length];
+			for (int v = 0; v < corner.length; v++) {
+				xy[2 * v] = mesh.getX(corner[v]);
+				xy[2 * v + 1] = mesh.getY(corner[v]);
+			}
+			grid = new PointGrid(xy, corner.length);
+		}
+		return grid;
+	}
+
+	/**
+	 * @return The triangle across the given edge of the given triangle, or -1
+	 *         if there is none
+	 * @param edge
+	 *            0, 1 or 2, the edge from that corner to the next
+	 */
+	public int getNeighbor(int triangle, int edge) {
+		int other = across[3 * triangle + edge];
+		return other < 0 ? -1 : other / 3;
+	}
+
+	/**
+	 * Traces the z = level contour through the mesh
+	 *
+	 * @param triangles
+	 *            hands every triangle whose z range contains level to its
+	 *            argument, for example a LevelSweep's forEachActive
+	 * @return The chains of the contour, each listed once. A chain that
+	 *         closes ends with its first point again; any other runs from one
+	 *         edge of the mesh to another.
+	 */
+	public List<List<Point2D>> trace(double level, Consumer<IntConsumer> triangles) {
+		Visited walked = visited.get();
+		walked.reset(mesh.size());
+		int[] stamps = walked.stamps;
+		int stamp = walked.stamp;
+		List<List<Point2D>> chains = new ArrayList<List<Point2D>>();
+
+		triangles.accept(t -> {
+			if (stamps[t] == stamp) {
+				return;
+			}
+			int in = crossing(3 * t, -1, level);
+			if (in < 0) {
+				return;
+			}
+			stamps[t] = stamp;
+			int out = crossing(3 * t, in, level);
+			List<Point2D> chain = new ArrayList<Point2D>();
+			chain.add(intersect(in, level));
+			chain.add(intersect(out, level));
+			if (walk(out, chain, level, stamps, stamp) == t) {
+				// back where it started, and the last point is the first again
+				chains.add(chain);
+				return;
+			}
+			// ran off the mesh, go back for the part before t
+			List<Point2D> before = new ArrayList<Point2D>();
+			walk(in, before, level, stamps, stamp);
+			if (!before.isEmpty()) {
+				Collections.reverse(before);
+				before.addAll(chain);
+				chain = before;
+			}
+			chains.add(chain);
+		});
+		return chains;
+	}
+
+	/**
+	 * Walks out of the edge starting at the given corner, adding the point
+	 * where the contour leaves each triangle it enters
+	 *
+	 * @return The first triangle that had already been walked through, or -1
+	 *         if the walk reached the edge of the mesh
+	 */
+	private int walk(int out, List<Point2D> chain, double level, int[] stamps, int stamp) {
+		int in = across[out];
+		while (in >= 0) {
+			int t = in / 3;
+			if (stamps[t] == stamp) {
+				return t;
+			}
+			stamps[t] = stamp;
+			out = crossing(3 * t, in, level);
+			chain.add(intersect(out, level));
+			in = across[out];
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The first corner of the triangle starting at first whose edge
+	 *         crosses the level, other than skip, or -1 if there is none
+	 */
+	private int crossing(int first, int skip, double level) {
+		for (int c = first; c < first + 3; c++) {
+			if (c != skip && (mesh.getZ(c) < level) != (mesh.getZ(next(c)) < level)) {
+				return c;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Where the edge starting at the given corner crosses the level,
+	 *         computed the same way from whichever triangle it is asked
+	 */
+	private Point2D intersect(int c, double level) {
+		int a = vertex[c], b = vertex[next(c)];
+		return TopoMap.getIntersect(mesh, corner[Math.min(a, b)], corner[Math.max(a, b)], level);
+	}
+}
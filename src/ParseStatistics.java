@@ -0,0 +1,240 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Histograms of vertex z and facet normal z gathered while an STL file is
+ * parsed. The z histogram is handy for picking contour levels.
+ */
+public class ParseStatistics implements STLParseListener {
+
+	private final Histogram zHistogram;
+	private final Histogram normalHistogram;
+
+	/**
+	 * Buckets both histograms by 1/20th of a unit
+	 */
+	public ParseStatistics() {
+		this(1.0 / 20, 1.0 / 20);
+	}
+
+	/**
+	 * @param zBinWidth
+	 *            width of the vertex z buckets, in map units
+	 * @param normalBinWidth
+	 *            width of the normal z buckets
+	 */
+	public ParseStatistics(double zBinWidth, double normalBinWidth) {
+		zHistogram = new Histogram(zBinWidth);
+		normalHistogram = new Histogram(normalBinWidth);
+	}
+
+	@Override
+	public void facet(double normalX, double normalY, double normalZ) {
+		normalHistogram.add(normalZ);
+	}
+
+	@Override
+	public void vertex(double x, double y, double z) {
+		zHistogram.add(z);
+	}
+
+	public Histogram getZHistogram() {
+		return zHistogram;
+	}
+
+	public Histogram getNormalHistogram() {
+		return normalHistogram;
+	}
+
+	/**
+	 * @return Both histograms, in the layout the parser used to print them
+	 */
+	public String report() {
+		return "Normals:\n" + normalHistogram + "\nZ values\n" + zHistogram;
+	}
+
+	@Override
+	public String toString() {
+		return report();
+	}
+
+	/**
+	 * Counts values in buckets of a fixed width. A value v lands in bucket
+	 * (long) (v / width), so bucket 0 holds everything strictly between -width
+	 * and width. Each thread that adds values counts them on its own, so
+	 * parallel parses don't wait on each other, and the counts are added up
+	 * when they are read. A thread keeps its counts in a primitive array that
+	 * grows to cover up to MAX_BINS buckets, and any further out in a map.
+	 * Values too far out to number their bucket, infinities included, are
+	 * counted under negative or positive infinity.
+	 */
+	public static class Histogram {
+		/**
+		 * Most buckets a thread keeps in its array
+		 */
+		private static final int MAX_BINS = 1 << 16;
+
+		/**
+		 * Bucket numbers are kept below this, well inside a long
+		 */
+		private static final double BIN_LIMIT = 0x1p62;
+
+		private final double binWidth;
+		// bins per unit, multiplied rather than dividing by the width
+		private final double scale;
+		// every thread's counts, for reading
+		private final List<Counts> threads = new CopyOnWriteArrayList<Counts>();
+		private final ThreadLocal<Counts> counts = ThreadLocal.withInitial(() -> {
+			Counts counts = new Counts();
+			threads.add(counts);
+			return counts;
+		});
+
+		public Histogram(double binWidth) {
+			if (!(binWidth > 0)) {
+				throw new IllegalArgumentException("Bin width must be positive: " + binWidth);
+			}
+			this.binWidth = binWidth;
+			this.scale = 1 / binWidth;
+		}
+
+		public void add(double value) {
+			if (Double.isNaN(value)) {
+				return;
+			}
+			double bin = value * scale;
+			Counts counts = this.counts.get();
+			if (bin <= -BIN_LIMIT) {
+				counts.underflow();
+			} else if (bin >= BIN_LIMIT) {
+				counts.overflow();
+			} else {
+				counts.add((long) bin);
+			}
+		}
+
+		public double getBinWidth() {
+			return binWidth;
+		}
+
+		/**
+		 * @return The number of values counted in the bucket holding value
+		 */
+		public long count(double value) {
+			double bin = value * scale;
+			if (Double.isNaN(bin)) {
+				return 0;
+			}
+			long count = 0;
+			for (Counts counts : threads) {
+				if (bin <= -BIN_LIMIT) {
+					count += counts.underflowCount();
+				} else if (bin >= BIN_LIMIT) {
+					count += counts.overflowCount();
+				} else {
+					count += counts.count((long) bin);
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * @return Every non-empty bucket, keyed by the bucket's value nearest
+		 *         zero, with values too far out to bucket under negative and
+		 *         positive infinity
+		 */
+		public SortedMap<Double, Long> toMap() {
+			SortedMap<Double, Long> map = new TreeMap<Double, Long>();
+			for (Counts counts : threads) {
+				counts.addTo(map, scale);
+			}
+			return map;
+		}
+
+		@Override
+		public String toString() {
+			return toMap().toString();
+		}
+	}
+
+	/**
+	 * One thread's share of a Histogram. Only that thread adds to it, so its
+	 * lock is only ever waited on while the counts are being read.
+	 */
+	private static class Counts {
+		private long[] counts = new long[0];
+		// bucket number of counts[0]
+		private long firstBin = 0;
+		// buckets too far from the others to fit in the array
+		private final Map<Long, Long> far = new HashMap<Long, Long>();
+		private long underflow = 0, overflow = 0;
+
+		synchronized void add(long bin) {
+			if (counts.length == 0) {
+				counts = new long[16];
+				firstBin = bin - 8;
+			} else if (bin < firstBin || bin >= firstBin + counts.length) {
+				long low = Math.min(bin, firstBin), high = Math.max(bin, firstBin + counts.length - 1);
+				if (high - low + 1 > Histogram.MAX_BINS) {
+					far.merge(bin, 1L, Long::sum);
+					return;
+				}
+				// leave room to grow the same way again
+				int length = (int) Math.min(2 * (high - low + 1), Histogram.MAX_BINS);
+				long first = low - (length - (high - low + 1)) / 2;
+				long[] grown = new long[length];
+				System.arraycopy(counts, 0, grown, (int) (firstBin - first), counts.length);
+				counts = grown;
+				firstBin = first;
+			}
+			counts[(int) (bin - firstBin)]++;
+		}
+
+		synchronized void underflow() {
+			underflow++;
+		}
+
+		synchronized void overflow() {
+			overflow++;
+		}
+
+		synchronized long count(long bin) {
+			if (bin >= firstBin && bin < firstBin + counts.length) {
+				return counts[(int) (bin - firstBin)];
+			}
+			return far.getOrDefault(bin, 0L);
+		}
+
+		synchronized long underflowCount() {
+			return underflow;
+		}
+
+		synchronized long overflowCount() {
+			return overflow;
+		}
+
+		/**
+		 * Adds these counts to the map, keyed as Histogram.toMap() does
+		 */
+		synchronized void addTo(SortedMap<Double, Long> map, double scale) {
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] > 0) {
+					map.merge((firstBin + i) / scale, counts[i], Long::sum);
+				}
+			}
+			for (Map.Entry<Long, Long> entry : far.entrySet()) {
+				map.merge(entry.getKey() / scale, entry.getValue(), Long::sum);
+			}
+			if (underflow > 0) {
+				map.merge(Double.NEGATIVE_INFINITY, underflow, Long::sum);
+			}
+			if (overflow > 0) {
+				map.merge(Double.POSITIVE_INFINITY, overflow, Long::sum);
+			}
+		}
+	}
+}
@@ -0,0 +1,264 @@
+import java.util.function.IntConsumer;
+
+/**
+ * A static index of points for finding the ones near a location. The points'
+ * bounding box is cut into a uniform grid of about two points per cell, and
+ * the points are stored cell by cell in primitive arrays, with each cell's
+ * run found through a table of offsets (compressed sparse rows). Building it
+ * takes two passes over the points.
+ *
+ * A search for the nearest points looks at the cell the location is in and
+ * then at rings of cells around it, stopping once no cell further out can
+ * hold anything nearer. A search within a radius looks at the cells its
+ * circle's bounding box covers.
+ */
+public class PointGrid {
+
+	private final double minX, minY, cellSize;
+	private final int cols, rows;
+	// the points of cell c are xy pairs start[c] to start[c + 1] - 1
+	private final int[] start;
+	private final double[] xy;
+	// the number each point was given
+	private final int[] id;
+
+	/**
+	 * @param points
+	 *            x, y pairs; point i is numbered i
+	 * @param count
+	 *            number of points
+	 */
+	public PointGrid(double[] points, int count) {
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < count; i++) {
+			minX = Math.min(minX, points[2 * i]);
+			minY = Math.min(minY, points[2 * i + 1]);
+			maxX = Math.max(maxX, points[2 * i]);
+			maxY = Math.max(maxY, points[2 * i + 1]);
+		}
+		if (count == 0) {
+			minX = minY = maxX = maxY = 0;
+		}
+		this.minX = minX;
+		this.minY = minY;
+		double width = maxX - minX, height = maxY - minY;
+		// about two points per cell, by the box's area or, for points in a
+		// line, by its length
+		double cellSize = Math.sqrt(2 * width * height / Math.max(count, 1));
+		if (!(cellSize > 0)) {
+			cellSize = 2 * Math.max(width, height) / Math.max(count, 1);
+		}
+		if (!(cellSize > 0)) {
+			cellSize = 1;
+		}
+		this.cellSize = cellSize;
+		cols = (int) Math.min(width / cellSize, count) + 1;
+		rows = (int) Math.min(height / cellSize, count) + 1;
+
+		start = new int[cols * rows + 1];
+		int[] cellOf = new int[count];
+		for (int i = 0; i < count; i++) {
+			cellOf[i] = cell(col(points[2 * i]), row(points[2 * i + 1]));
+			start[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < cols * rows; c++) {
+			start[c + 1] += start[c];
+		}
+		xy = new double[2 * count];
+		id = new int[count];
+		int[] fill = new int[cols * rows];
+		System.arraycopy(start, 0, fill, 0, fill.length);
+		for (int i = 0; i < count; i++) {
+			int p = fill[cellOf[i]]++;
+			xy[2 * p] = points[2 * i];
+			xy[2 * p + 1] = points[2 * i + 1];
+			id[p] = i;
+		}
+	}
+
+	private int col(double x) {
+		return Math.max(0, Math.min(cols - 1, (int) ((x - minX) / cellSize)));
+	}
+
+	private int row(double y) {
+		return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+	}
+
+	private int cell(int col, int row) {
+		return row * cols + col;
+	}
+
+	/**
+	 * @return The number of points
+	 */
+	public int size() {
+		return id.length;
+	}
+
+	/**
+	 * @return The number of the point nearest (x, y) and no farther than
+	 *         maxDistance from it, or -1 if there is none. Of points equally
+	 *         near, the lowest numbered.
+	 */
+	public int nearest(double x, double y, double maxDistance) {
+		int col = col(x), row = row(y);
+		int best = -1;
+		double bestDistance = maxDistance * maxDistance;
+		for (int ring = 0; ring <= Math.max(cols, rows); ring++) {
+			// anything in this ring or beyond is at least this far
+			double reach = (ring - 1) * cellSize;
+			if (ring > 0 && (reach * reach > bestDistance || reach > maxDistance)) {
+				break;
+			}
+			for (int j = row - ring; j <= row + ring; j++) {
+				if (j < 0 || j >= rows) {
+					continue;
+				}
+				boolean edge = j == row - ring || j == row + ring;
+				for (int i = col - ring; i <= col + ring; i += edge ? 1 : 2 * ring) {
+					if (i < 0 || i >= cols) {
+						continue;
+					}
+					int c = cell(i, j);
+					for (int p = start[c]; p < start[c + 1]; p++) {
+						double dx = xy[2 * p] - x, dy = xy[2 * p + 1] - y;
+						double distance = dx * dx + dy * dy;
+						if (distance < bestDistance || distance == bestDistance && (best < 0 || id[p] < best)) {
+							bestDistance = distance;
+							best = id[p];
+						}
+					}
+					if (ring == 0) {
+						break;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return The numbers of the k points nearest (x, y), nearest first, or
+	 *         of all of them if there are fewer. Of points equally near, the
+	 *         lowest numbered first.
+	 */
+	public int[] kNearest(double x, double y, int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("Negative k: " + k);
+		}
+		k = Math.min(k, size());
+		// a max heap of the nearest found so far, farthest at the top
+		int[] heapId = new int[k];
+		double[] heapDistance = new double[k];
+		int found = 0;
+		int col = col(x), row = row(y);
+		for (int ring = 0; k > 0 && ring <= Math.max(cols, rows); ring++) {
+			double reach = (ring - 1) * cellSize;
+			if (ring > 0 && found == k && reach * reach > heapDistance[0]) {
+				break;
+			}
+			for (int j = row - ring; j <= row + ring; j++) {
+				if (j < 0 || j >= rows) {
+					continue;
+				}
+				boolean edge = j == row - ring || j == row + ring;
+				for (int i = col - ring; i <= col + ring; i += edge ? 1 : 2 * ring) {
+					if (i < 0 || i >= cols) {
+						continue;
+					}
+					int c = cell(i, j);
+					for (int p = start[c]; p < start[c + 1]; p++) {
+						double dx = xy[2 * p] - x, dy = xy[2 * p + 1] - y;
+						double distance = dx * dx + dy * dy;
+						if (found < k) {
+							heapId[found] = id[p];
+							heapDistance[found] = distance;
+							siftUp(heapId, heapDistance, found++);
+						} else if (farther(heapDistance[0], heapId[0], distance, id[p])) {
+							heapId[0] = id[p];
+							heapDistance[0] = distance;
+							siftDown(heapId, heapDistance, 0, k);
+						}
+					}
+					if (ring == 0) {
+						break;
+					}
+				}
+			}
+		}
+		// taking the top off one at a time leaves the heap sorted nearest
+		// first
+		for (int n = found - 1; n > 0; n--) {
+			swap(heapId, heapDistance, 0, n);
+			siftDown(heapId, heapDistance, 0, n);
+		}
+		return heapId;
+	}
+
+	/**
+	 * @return Whether the point at distance a numbered aId comes after the
+	 *         one at distance b numbered bId, nearest and then lowest numbered
+	 *         first
+	 */
+	private static boolean farther(double a, int aId, double b, int bId) {
+		return a > b || a == b && aId > bId;
+	}
+
+	private static void siftUp(int[] heapId, double[] heapDistance, int n) {
+		while (n > 0) {
+			int parent = (n - 1) / 2;
+			if (!farther(heapDistance[n], heapId[n], heapDistance[parent], heapId[parent])) {
+				return;
+			}
+			swap(heapId, heapDistance, n, parent);
+			n = parent;
+		}
+	}
+
+	private static void siftDown(int[] heapId, double[] heapDistance, int n, int count) {
+		while (2 * n + 1 < count) {
+			int child = 2 * n + 1;
+			if (child + 1 < count
+					&& farther(heapDistance[child + 1], heapId[child + 1], heapDistance[child], heapId[child])) {
+				child++;
+			}
+			if (!farther(heapDistance[child], heapId[child], heapDistance[n], heapId[n])) {
+				return;
+			}
+			swap(heapId, heapDistance, n, child);
+			n = child;
+		}
+	}
+
+	private static void swap(int[] heapId, double[] heapDistance, int a, int b) {
+		int id = heapId[a];
+		heapId[a] = heapId[b];
+		heapId[b] = id;
+		double distance = heapDistance[a];
+		heapDistance[a] = heapDistance[b];
+		heapDistance[b] = distance;
+	}
+
+	/**
+	 * Visits the number of every point no farther than radius from (x, y),
+	 * in no particular order
+	 */
+	public void within(double x, double y, double radius, IntConsumer visitor) {
+		if (!(radius >= 0) || size() == 0) {
+			return;
+		}
+		double radiusSq = radius * radius;
+		int lastCol = col(x + radius), lastRow = row(y + radius);
+		for (int j = row(y - radius); j <= lastRow; j++) {
+			for (int c = cell(col(x - radius), j); c <= cell(lastCol, j); c++) {
+				for (int p = start[c]; p < start[c + 1]; p++) {
+					double dx = xy[2 * p] - x, dy = xy[2 * p + 1] - y;
+					if (dx * dx + dy * dy <= radiusSq) {
+						visitor.accept(id[p]);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,21 @@
+/**
+ * Receives the raw values STLParser reads, for callers that want to gather
+ * statistics about a file as it loads. Parsing in parallel calls a listener
+ * from several threads at once, so implementations must be thread-safe.
+ * 
+ * @see ParseStatistics
+ */
+public interface STLParseListener {
+
+	/**
+	 * Called once per facet with the normal given in the file (not
+	 * recalculated)
+	 */
+	void facet(double normalX, double normalY, double normalZ);
+
+	/**
+	 * Called once per corner of every facet, with the coordinates as they
+	 * were stored in the mesh
+	 */
+	void vertex(double x, double y, double z);
+}
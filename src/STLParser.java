@@ -24,21 +24,32 @@ SOFTWARE.
 */
 
 import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
 import java.util.logging.Logger;
 
 /**
@@ -59,25 +70,184 @@ public class STLParser {
 	 * 
 	 * @param filepath
 	 *            The file to parse
-	 * @return A list of triangles representing all of the triangles in the STL
-	 *         file.
+	 * @return A mesh holding all of the triangles in the STL file.
 	 * @throws IOException
 	 *             Thrown if there was a problem reading the file (typically
 	 *             means the file does not exist or is not a file).
 	 * @throws IllegalArgumentException
 	 *             Thrown if the STL is not properly formatted
 	 */
-	public static List<Triangle> parseSTLFile(Path filepath) throws IOException {
-		byte[] allBytes = Files.readAllBytes(filepath);
-		// determine if it is ASCII or binary STL
+	public static TriangleMesh parseSTLFile(Path filepath) throws IOException {
+		return parseSTLFile(filepath, Runtime.getRuntime().availableProcessors() > 1);
+	}
+
+	/**
+	 * Parses an STL file, attempting to automatically detect whether the file
+	 * is an ASCII or binary STL file
+	 * 
+	 * @param filepath
+	 *            The file to parse
+	 * @param parallel
+	 *            whether to decode the file on several cores
+	 * @return A mesh holding all of the triangles in the STL file.
+	 * @throws IOException
+	 *             Thrown if there was a problem reading the file (typically
+	 *             means the file does not exist or is not a file).
+	 * @throws IllegalArgumentException
+	 *             Thrown if the STL is not properly formatted
+	 */
+	public static TriangleMesh parseSTLFile(Path filepath, boolean parallel) throws IOException {
+		return parseSTLFile(filepath, parallel, null);
+	}
 
+	/**
+	 * Parses an STL file, attempting to automatically detect whether the file
+	 * is an ASCII or binary STL file
+	 * 
+	 * @param filepath
+	 *            The file to parse
+	 * @param parallel
+	 *            whether to decode the file on several cores
+	 * @param listener
+	 *            told about every facet normal and vertex read, or null
+	 * @return A mesh holding all of the triangles in the STL file.
+	 * @throws IOException
+	 *             Thrown if there was a problem reading the file (typically
+	 *             means the file does not exist or is not a file).
+	 * @throws IllegalArgumentException
+	 *             Thrown if the STL is not properly formatted
+	 */
+	public static TriangleMesh parseSTLFile(Path filepath, boolean parallel, STLParseListener listener)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(filepath, StandardOpenOption.READ)) {
+			long fileLength = channel.size();
+			// only the header is needed to tell ASCII and binary apart, so
+			// don't pull the whole file onto the heap for that
+			byte[] header = readHeader(channel, 512);
+			if (isGzip(header)) {
+				// compressed input can only be decoded front to back
+				return parseSTLStream(Channels.newInputStream(channel), listener);
+			}
+
+			// read file to array of triangles
+			TriangleMesh mesh;
+			if (isASCII(header, fileLength)) {
+				System.out.println("Read in ASCII file:");
+				mesh = readASCII(channel, parallel, listener);
+			} else {
+				mesh = readBinary(channel, parallel, listener);
+				System.out.println("Read in binary file");
+			}
+			return mesh;
+		}
+	}
+
+	/**
+	 * Parses STL content from a stream, attempting to automatically detect
+	 * whether it is gzip compressed and whether it is ASCII or binary. The
+	 * input is decoded as it is read, a fixed size buffer at a time, so
+	 * neither it nor its decompressed form is ever held in memory as a whole.
+	 * Binary input is read until it runs out; the triangle count in its
+	 * header is not used.
+	 * 
+	 * @param in
+	 *            STL content, possibly gzip compressed. It is read to the end
+	 *            but not closed.
+	 * @param listener
+	 *            told about every facet normal and vertex read, or null
+	 * @return A mesh holding all of the triangles in the STL content.
+	 * @throws IOException
+	 *             Thrown if there was a problem reading or decompressing the
+	 *             input
+	 * @throws IllegalArgumentException
+	 *             Thrown if the STL is not properly formatted
+	 */
+	public static TriangleMesh parseSTLStream(InputStream in, STLParseListener listener) throws IOException {
+		TriangleMesh mesh = new TriangleMesh();
+		mesh.setBounds(readStream(in, mesh, listener));
+		return mesh;
+	}
+
+	/**
+	 * Reads an STL file front to back without keeping any of its triangles,
+	 * only handing each facet normal and vertex to the listener, so files far
+	 * larger than the heap can be processed (see TiledContourer). Vertices
+	 * arrive exactly as parseSTLFile would store them, three per facet.
+	 * 
+	 * @param filepath
+	 *            The file to read, possibly gzip compressed
+	 * @param listener
+	 *            told about every facet normal and vertex read
+	 * @return { {minX, minY, minZ}, {maxX, maxY, maxZ} } over all vertices
+	 * @throws IOException
+	 *             Thrown if there was a problem reading the file
+	 * @throws IllegalArgumentException
+	 *             Thrown if the STL is not properly formatted
+	 */
+	public static double[][] scanSTLFile(Path filepath, STLParseListener listener) throws IOException {
+		try (InputStream in = Files.newInputStream(filepath)) {
+			double[] bounds = readStream(in, null, listener);
+			return new double[][] { Arrays.copyOfRange(bounds, 0, 3), Arrays.copyOfRange(bounds, 3, 6) };
+		}
+	}
+
+	/**
+	 * Detects the kind of STL content in the stream and reads all of it into
+	 * the mesh, or only to the listener if the mesh is null
+	 * 
+	 * @return The bounds of the vertices read, laid out as in emptyBounds()
+	 */
+	private static double[] readStream(InputStream in, TriangleMesh triangles, STLParseListener listener)
+			throws IOException {
+		byte[] header = readHeader(in, 512);
+		// put the header back in front of the rest of the input
+		InputStream all = new SequenceInputStream(new ByteArrayInputStream(header), in);
+		if (isGzip(header)) {
+			return readStream(new GZIPInputStream(all, 1 << 16), triangles, listener);
+		}
+
+		double[] bounds;
+		// the length of a stream isn't known up front, so only the header can
+		// tell ASCII and binary apart
+		if (isASCII(header, Long.MAX_VALUE)) {
+			System.out.println("Read in ASCII file:");
+			Logger.getLogger(STLParser.class.getName()).log(Level.FINEST, "Parsing ASCII STL format");
+			bounds = emptyBounds();
+			readFacets(new STLTokenizer(Channels.newChannel(all)), Long.MAX_VALUE, triangles, bounds, listener);
+		} else {
+			bounds = readBinary(Channels.newChannel(all), triangles, listener);
+			System.out.println("Read in binary file");
+		}
+		return bounds;
+	}
+
+	/**
+	 * @return Whether the bytes start with the gzip magic number
+	 */
+	private static boolean isGzip(byte[] header) {
+		return header.length >= 2 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b;
+	}
+
+	/**
+	 * Determines whether the file starting with the given bytes is an ASCII
+	 * STL file
+	 * 
+	 * @param header
+	 *            up to the first 512 bytes of the file
+	 * @param fileLength
+	 *            the total length of the file in bytes
+	 * @return true if the file is ASCII, false if it is binary
+	 * @throws IllegalArgumentException
+	 *             Thrown if the file is neither valid ASCII nor binary STL
+	 */
+	private static boolean isASCII(byte[] header, long fileLength) {
 		// some binary STL files has "solid" in the first 80 chars
 		// this breaks logic that determines if a file is ascii based on it
 		// simply beginning with "solid"
 		boolean isASCIISTL = false;
 
 		// read the first 512 chars or less
-		String buf = readblock(allBytes, 0, 512);
+		String buf = readblock(header, 0, 512);
 		StringBuffer sb = new StringBuffer();
 		int inl = readline(buf, sb, 0);
 		String line = sb.toString();
@@ -94,28 +264,33 @@ public class STLParser {
 					isASCIISTL = true; // empty ascii file
 				else if (token.equals("facet")) {
 					isASCIISTL = true; // ascii file
-				} else if (isbinaryfile(allBytes))
+				} else if (isbinaryfile(fileLength, header))
 					isASCIISTL = false; // binary file
 			} else { // no linefeed
-				if (isbinaryfile(allBytes))
+				if (isbinaryfile(fileLength, header))
 					isASCIISTL = false; // binary file
 			}
 		} else {// does not starts with "solid"
-			if (isbinaryfile(allBytes))
+			if (isbinaryfile(fileLength, header))
 				isASCIISTL = false; // binary file
 		}
+		return isASCIISTL;
+	}
 
-		// read file to array of triangles
-		List<Triangle> mesh;
-		if (isASCIISTL) {
-			Charset charset = Charset.forName("UTF-8");
-			System.out.println("Read in ASCII file:");
-			mesh = readASCII(charset.decode(ByteBuffer.wrap(allBytes)).toString().toLowerCase());
-		} else {
-			mesh = readBinary(allBytes);
-			System.out.println("Read in binary file");
+	private static byte[] readHeader(FileChannel channel, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate((int) Math.min(length, channel.size()));
+		while (buf.hasRemaining() && channel.read(buf, buf.position()) >= 0) {
 		}
-		return mesh;
+		return buf.array();
+	}
+
+	private static byte[] readHeader(InputStream in, int length) throws IOException {
+		byte[] header = new byte[length];
+		int read = 0;
+		for (int n; read < length && (n = in.read(header, read, length - read)) >= 0;) {
+			read += n;
+		}
+		return Arrays.copyOf(header, read);
 	}
 
 	public static String readblock(byte[] allBytes, int offset, int length) {
@@ -136,10 +311,20 @@ public class STLParser {
 	}
 
 	public static boolean isbinaryfile(byte[] allBytes) throws IllegalArgumentException {
-		if (allBytes.length < 84)
+		return isbinaryfile(allBytes.length, allBytes);
+	}
+
+	/**
+	 * @param fileLength
+	 *            the total length of the file in bytes
+	 * @param header
+	 *            at least the first 84 bytes of the file (if it has that many)
+	 */
+	public static boolean isbinaryfile(long fileLength, byte[] header) throws IllegalArgumentException {
+		if (fileLength < 84 || header.length < 84)
 			throw new IllegalArgumentException("invalid binary file, length<84");
-		int numtriangles = byteatoint(Arrays.copyOfRange(allBytes, 80, 84));
-		if (allBytes.length >= 84 + numtriangles * 50)
+		long numtriangles = byteatoint(Arrays.copyOfRange(header, 80, 84)) & 0xffffffffL;
+		if (fileLength >= 84 + numtriangles * 50)
 			return true; // is binary file
 		else {
 			String msg = "invalid binary file, num triangles does not match length specs";
@@ -158,133 +343,267 @@ public class STLParser {
 		return r;
 	}
 
-	private static Map<Double, Integer> nMap = new TreeMap<Double, Integer>();
-	private static Map<Double, Integer> zMap = new TreeMap<Double, Integer>();
-
 	/**
 	 * Reads an STL ASCII file content provided as a String
 	 * 
 	 * @param content
 	 *            ASCII STL
-	 * @return A list of triangles representing all of the triangles in the STL
-	 *         file.
+	 * @return A mesh holding all of the triangles in the STL file.
 	 * @throws IllegalArgumentException
 	 *             Thrown if the STL is not properly formatted
 	 */
-	public static List<Triangle> readASCII(String content) {
+	public static TriangleMesh readASCII(String content) {
+		try {
+			return readASCII(Channels.newChannel(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))));
+		} catch (IOException ex) {
+			// IO exceptions are impossible with byte array input streams,
+			// but still need to be caught
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Reads ASCII STL content from a channel, a buffer at a time, straight
+	 * from its bytes
+	 * 
+	 * @param in
+	 *            ASCII STL, read from its current position on
+	 * @return A mesh holding all of the triangles in the STL file.
+	 * @throws IOException
+	 *             Thrown if there was a problem reading the input
+	 * @throws IllegalArgumentException
+	 *             Thrown if the STL is not properly formatted
+	 */
+	public static TriangleMesh readASCII(ReadableByteChannel in) throws IOException {
+		return readASCII(in, null);
+	}
+
+	/**
+	 * Reads ASCII STL content from a channel, a buffer at a time, straight
+	 * from its bytes
+	 * 
+	 * @param in
+	 *            ASCII STL, read from its current position on
+	 * @param listener
+	 *            told about every facet normal and vertex read, or null
+	 * @return A mesh holding all of the triangles in the STL file.
+	 * @throws IOException
+	 *             Thrown if there was a problem reading the input
+	 * @throws IllegalArgumentException
+	 *             Thrown if the STL is not properly formatted
+	 */
+	public static TriangleMesh readASCII(ReadableByteChannel in, STLParseListener listener) throws IOException {
 		Logger.getLogger(STLParser.class.getName()).log(Level.FINEST, "Parsing ASCII STL format");
-		// string is lowercase
-		ArrayList<Triangle> triangles = new ArrayList<>();
-
-		int position = 0;
-		scan: {
-			while (position < content.length() & position >= 0) {
-				position = content.indexOf("facet", position);
-
-				// this block is code I added to analyze the normals because I'm
-				// so confused
-				// about this file right now
-				int oldPosition = position;
-				{
-					position = content.indexOf("normal", position) + "normal".length();
-					while (Character.isWhitespace(content.charAt(position))) {
-						position++;
-					}
-					int nextSpace;
-					double[] vals = new double[3];
-					for (int d = 0; d < vals.length; d++) {
-						nextSpace = position + 1;
-						while (!Character.isWhitespace(content.charAt(nextSpace))) {
-							nextSpace++;
-						}
-						String value = content.substring(position, nextSpace);
-						vals[d] = Double.parseDouble(value);
-
-						position = nextSpace;
-						while (Character.isWhitespace(content.charAt(position))) {
-							position++;
-						}
-					}
-					// tada the z value of the normal is in vals[2]
-					double bucketSize = 20;
-					double bucket = ((int) (vals[2] * bucketSize)) / bucketSize;
-					if (nMap.get(bucket) == null) {
-						nMap.put(bucket, 1);
-					} else {
-						nMap.put(bucket, nMap.get(bucket) + 1);
-					}
+		TriangleMesh triangles = new TriangleMesh();
+		double[] bounds = emptyBounds();
+		readFacets(new STLTokenizer(in), Long.MAX_VALUE, triangles, bounds, listener);
+		triangles.setBounds(bounds);
+		return triangles;
+	}
+
+	/**
+	 * Reads an ASCII STL file. In parallel mode the file is cut into byte
+	 * ranges, each moved forward to the start of the next facet, which are
+	 * parsed on the common fork-join pool and joined back together in file
+	 * order. The result is the same as reading the file serially.
+	 * 
+	 * @param channel
+	 *            open channel to an ASCII STL file
+	 * @param parallel
+	 *            whether to parse on several cores
+	 * @param listener
+	 *            told about every facet normal and vertex read, or null
+	 * @return A mesh holding all of the triangles in the STL file.
+	 * @throws IOException
+	 *             Thrown if there was a problem reading the file
+	 * @throws IllegalArgumentException
+	 *             Thrown if the STL is not properly formatted
+	 */
+	public static TriangleMesh readASCII(FileChannel channel, boolean parallel, STLParseListener listener)
+			throws IOException {
+		long length = channel.size();
+		int ranges = 1;
+		if (parallel) {
+			ranges = (int) Math.max(1,
+					Math.min(4L * Runtime.getRuntime().availableProcessors(), length / MIN_RANGE_BYTES));
+		}
+		if (ranges == 1) {
+			return readASCII(new PositionalChannel(channel, 0), listener);
+		}
+		Logger.getLogger(STLParser.class.getName()).log(Level.FINEST, "Parsing ASCII STL format");
+
+		long[] starts = new long[ranges + 1];
+		starts[ranges] = length;
+		for (int i = 1; i < ranges; i++) {
+			starts[i] = nextFacet(channel, Math.max(length / ranges * i, starts[i - 1]));
+		}
+
+		List<Callable<Object[]>> tasks = new ArrayList<>();
+		for (int i = 0; i < ranges; i++) {
+			final long start = starts[i], end = starts[i + 1];
+			tasks.add(() -> {
+				TriangleMesh triangles = new TriangleMesh();
+				double[] bounds = emptyBounds();
+				readFacets(new STLTokenizer(new PositionalChannel(channel, start), start), end, triangles, bounds,
+						listener);
+				return new Object[] { triangles, bounds };
+			});
+		}
+
+		List<TriangleMesh> parts = new ArrayList<>();
+		double[] bounds = emptyBounds();
+		int size = 0;
+		for (Future<Object[]> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+			Object[] part;
+			try {
+				part = future.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while parsing", ex);
+			} catch (ExecutionException ex) {
+				if (ex.getCause() instanceof IOException) {
+					throw (IOException) ex.getCause();
 				}
-				position = oldPosition;
+				if (ex.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) ex.getCause();
+				}
+				throw new IllegalStateException(ex.getCause());
+			}
+			TriangleMesh triangles = (TriangleMesh) part[0];
+			double[] partBounds = (double[]) part[1];
+			parts.add(triangles);
+			size += triangles.size();
+			widen(bounds, partBounds[0], partBounds[1], partBounds[2]);
+			widen(bounds, partBounds[3], partBounds[4], partBounds[5]);
+		}
+
+		TriangleMesh triangles = new TriangleMesh(size);
+		for (TriangleMesh part : parts) {
+			triangles.addAll(part);
+		}
+		triangles.setBounds(bounds);
+		return triangles;
+	}
+
+	/**
+	 * Smallest byte range worth handing to its own worker, 4 MB
+	 */
+	private static final long MIN_RANGE_BYTES = 1 << 22;
+
+	/**
+	 * @return The position of the first "facet" keyword that starts at or
+	 *         after from, or the length of the file if there is none
+	 */
+	private static long nextFacet(FileChannel channel, long from) throws IOException {
+		if (from == 0) {
+			return 0;
+		}
+		// start one byte early so a token that begins exactly at from can be
+		// told apart from the tail of one that began before it
+		STLTokenizer tokens = new STLTokenizer(new PositionalChannel(channel, from - 1), from - 1);
+		boolean found = tokens.next();
+		if (found && tokens.position() == from - 1) {
+			// either a partial token or one that starts before from
+			found = tokens.next();
+		}
+		while (found && !tokens.is("facet")) {
+			found = tokens.next();
+		}
+		return found ? tokens.position() : channel.size();
+	}
 
-				if (position < 0) {
-					break scan;
+	/**
+	 * Reads facets until the input runs out or the next facet starts at or
+	 * after end. If the mesh is null, facets only go to the listener.
+	 */
+	private static void readFacets(STLTokenizer tokens, long end, TriangleMesh triangles, double[] bounds,
+			STLParseListener listener) throws IOException {
+		double[] vertices = new double[9];
+
+		while (tokens.skipTo("facet") && tokens.position() < end) {
+			try {
+				expect(tokens, "normal");
+				double normalX = tokens.nextDouble();
+				double normalY = tokens.nextDouble();
+				double normalZ = tokens.nextDouble();
+				if (listener != null) {
+					listener.facet(normalX, normalY, normalZ);
 				}
-				try {
-					Vec3d[] vertices = new Vec3d[3];
-					for (int v = 0; v < vertices.length; v++) {
-						position = content.indexOf("vertex", position) + "vertex".length();
-						while (Character.isWhitespace(content.charAt(position))) {
-							position++;
-						}
-						int nextSpace;
-						double[] vals = new double[3];
-						for (int d = 0; d < vals.length; d++) {
-							nextSpace = position + 1;
-							while (!Character.isWhitespace(content.charAt(nextSpace))) {
-								nextSpace++;
-							}
-							String value = content.substring(position, nextSpace);
-							vals[d] = Double.parseDouble(value);
-
-							// added to reverse y
-							{
-								if (d == 1) {
-									vals[d] = 279 - vals[d];
-								}
-							}
-
-							position = nextSpace;
-							while (Character.isWhitespace(content.charAt(position))) {
-								position++;
-							}
-						}
-						vertices[v] = new Vec3d(vals[0], vals[1], vals[2]);
-
-						// more extra stuffs
-						{
-							// tada the z value of the point is in vals[2]
-							double bucketSize = 20;
-							double bucket = ((int) (vals[2] * bucketSize)) / bucketSize;
-							if (zMap.get(bucket) == null) {
-								zMap.put(bucket, 1);
-							} else {
-								zMap.put(bucket, zMap.get(bucket) + 1);
-							}
-						}
-					}
-					position = content.indexOf("endfacet", position) + "endfacet".length();
-					triangles.add(new Triangle(vertices[0], vertices[1], vertices[2]));
-				} catch (Exception ex) {
-					int back = position - 128;
-					if (back < 0) {
-						back = 0;
-					}
-					int forward = position + 128;
-					if (position > content.length()) {
-						forward = content.length();
+
+				for (int v = 0; v < 9; v += 3) {
+					expect(tokens, "vertex");
+					vertices[v] = tokens.nextDouble();
+					// added to reverse y
+					vertices[v + 1] = 279 - tokens.nextDouble();
+					vertices[v + 2] = tokens.nextDouble();
+					widen(bounds, vertices[v], vertices[v + 1], vertices[v + 2]);
+					if (listener != null) {
+						listener.vertex(vertices[v], vertices[v + 1], vertices[v + 2]);
 					}
-					throw new IllegalArgumentException(
-							"Malformed STL syntax near \"" + content.substring(back, forward) + "\"", ex);
 				}
+				expect(tokens, "endfacet");
+			} catch (NumberFormatException ex) {
+				throw new IllegalArgumentException(
+						"Malformed STL syntax near byte " + tokens.position() + ": \"" + tokens.token() + "\"", ex);
+			}
+			if (triangles != null) {
+				triangles.add(vertices[0], vertices[1], vertices[2], //
+						vertices[3], vertices[4], vertices[5], //
+						vertices[6], vertices[7], vertices[8]);
 			}
 		}
+	}
 
-		System.out.println("Normals:");
-		System.out.println(nMap);
-		System.out.println("Z values");
-		System.out.println(zMap);
+	/**
+	 * Reads a file channel from a given position on with positional reads,
+	 * which leaves the underlying channel's own position alone and so can be
+	 * done from several threads at once.
+	 */
+	private static class PositionalChannel implements ReadableByteChannel {
+		private final FileChannel channel;
+		private long position;
 
-		return triangles;
+		PositionalChannel(FileChannel channel, long position) {
+			this.channel = channel;
+			this.position = position;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			int read = channel.read(dst, position);
+			if (read > 0) {
+				position += read;
+			}
+			return read;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() {
+			// the underlying channel belongs to the caller
+		}
+	}
+
+	/**
+	 * Skips ahead to the given keyword, which must come before the input ends
+	 */
+	private static void expect(STLTokenizer tokens, String keyword) throws IOException {
+		if (!tokens.skipTo(keyword)) {
+			throw new IllegalArgumentException("Malformed STL syntax, expected \"" + keyword + "\" before end of input");
+		}
+	}
+
+	private static void widen(double[] bounds, double x, double y, double z) {
+		bounds[0] = Math.min(bounds[0], x);
+		bounds[1] = Math.min(bounds[1], y);
+		bounds[2] = Math.min(bounds[2], z);
+		bounds[3] = Math.max(bounds[3], x);
+		bounds[4] = Math.max(bounds[4], y);
+		bounds[5] = Math.max(bounds[5], z);
 	}
 
 	/**
@@ -292,62 +611,311 @@ public class STLParser {
 	 * 
 	 * @param allBytes
 	 *            binary STL
-	 * @return A list of triangles representing all of the triangles in the STL
-	 *         file.
+	 * @return A mesh holding all of the triangles in the STL file.
 	 * @throws IllegalArgumentException
 	 *             Thrown if the STL is not properly formatted
 	 */
-	public static List<Triangle> readBinary(byte[] allBytes) {
+	public static TriangleMesh readBinary(byte[] allBytes) {
 		Logger.getLogger(STLParser.class.getName()).log(Level.FINEST, "Parsing binary STL format");
-		DataInputStream in = new DataInputStream(new ByteArrayInputStream(allBytes));
-		ArrayList<Triangle> triangles = new ArrayList<>();
-		try {
-			// skip the header
-			byte[] header = new byte[80];
-			in.read(header);
-			// get number triangles (not really needed)
-			// WARNING: STL FILES ARE SMALL-ENDIAN
-			int numberTriangles = Integer.reverseBytes(in.readInt());
-			triangles.ensureCapacity(numberTriangles);
-			// read triangles
+		int numberTriangles = countRecords(allBytes.length);
+		ByteBuffer buf = ByteBuffer.wrap(allBytes).order(ByteOrder.LITTLE_ENDIAN);
+		TriangleMesh triangles = new TriangleMesh(numberTriangles);
+		triangles.setSize(numberTriangles);
+		double[] bounds = emptyBounds();
+		decodeRecords(buf, 84, 0, numberTriangles, triangles, bounds, null);
+		triangles.setBounds(bounds);
+		return triangles;
+	}
+
+	/**
+	 * Parses a binary STL file by mapping it into memory a window at a time,
+	 * so the file can be larger than 2 GB and is never copied onto the heap
+	 * as a whole.
+	 * 
+	 * @param channel
+	 *            open channel to a binary STL file
+	 * @return A mesh holding all of the triangles in the STL file.
+	 * @throws IOException
+	 *             Thrown if there was a problem reading the file
+	 * @throws IllegalArgumentException
+	 *             Thrown if the STL is not properly formatted
+	 */
+	public static TriangleMesh readBinary(FileChannel channel) throws IOException {
+		return readBinary(channel, false, null);
+	}
+
+	/**
+	 * Parses a binary STL file by mapping it into memory a window at a time.
+	 * Records are a fixed size, so in parallel mode the record range is split
+	 * up front and each fork-join worker decodes its own windows straight into
+	 * its own slice of the mesh.
+	 * 
+	 * @param channel
+	 *            open channel to a binary STL file
+	 * @param parallel
+	 *            whether to decode on the common fork-join pool
+	 * @param listener
+	 *            told about every facet normal and vertex read, or null
+	 * @return A mesh holding all of the triangles in the STL file, with its
+	 *         bounds already filled in.
+	 * @throws IOException
+	 *             Thrown if there was a problem reading the file
+	 * @throws IllegalArgumentException
+	 *             Thrown if the STL is not properly formatted
+	 */
+	public static TriangleMesh readBinary(FileChannel channel, boolean parallel, STLParseListener listener)
+			throws IOException {
+		Logger.getLogger(STLParser.class.getName()).log(Level.FINEST, "Parsing binary STL format");
+		// WARNING: STL FILES ARE SMALL-ENDIAN
+		int numberTriangles = countRecords(channel.size());
+		TriangleMesh triangles = new TriangleMesh(numberTriangles);
+		triangles.setSize(numberTriangles);
+		double[] bounds;
+		if (parallel) {
 			try {
-				while (in.available() > 0) {
-					float[] nvec = new float[3];
-					for (int i = 0; i < nvec.length; i++) {
-						nvec[i] = Float.intBitsToFloat(Integer.reverseBytes(in.readInt()));
-					}
-					Vec3d normal = new Vec3d(nvec[0], nvec[1], nvec[2]); // not
-																			// used
-																			// (yet)
-					Vec3d[] vertices = new Vec3d[3];
-					for (int v = 0; v < vertices.length; v++) {
-						float[] vals = new float[3];
-						for (int d = 0; d < vals.length; d++) {
-							// http://fightpc.blogspot.com/2014/08/reading-binary-stl-files-in-java.html
-							// (b[3]<<24)&0xff000000 | (b[2]<<16)&0xff0000 |
-							// (b[1]<<8)&0xff00 | b[0]&0xff
-							vals[d] = Float.intBitsToFloat(Integer.reverseBytes(in.readInt()));
-						}
-						vertices[v] = new Vec3d(vals[0], vals[1], vals[2]);
-					}
-					short attribute = Short.reverseBytes(in.readShort()); // not
-																			// used
-																			// (yet)
-					triangles.add(new Triangle(vertices[0], vertices[1], vertices[2]));
-				}
-			} catch (Exception ex) {
-				throw new IllegalArgumentException("Malformed STL binary at triangle number " + (triangles.size() + 1),
-						ex);
+				bounds = ForkJoinPool.commonPool()
+						.invoke(new DecodeTask(channel, triangles, 0, numberTriangles, listener));
+			} catch (UncheckedIOException ex) {
+				throw ex.getCause();
 			}
-		} catch (IOException ex) {
-			// IO exceptions are impossible with byte array input streams,
-			// but still need to be caught
-			Logger.getLogger(STLParser.class.getName()).log(Level.SEVERE,
-					"HOLY SHIT! A ByteArrayInputStream threw an exception!", ex);
+		} else {
+			bounds = decodeWindows(channel, 0, numberTriangles, triangles, listener);
 		}
+		triangles.setBounds(bounds);
 		return triangles;
 	}
 
+	/**
+	 * Parses binary STL content from a channel, a fixed size buffer of
+	 * records at a time, for input that can't be mapped such as a
+	 * decompressing stream. Records are read until the input runs out.
+	 * 
+	 * @param in
+	 *            binary STL, read from its current position on
+	 * @param listener
+	 *            told about every facet normal and vertex read, or null
+	 * @return A mesh holding all of the triangles in the STL content, with
+	 *         its bounds already filled in.
+	 * @throws IOException
+	 *             Thrown if there was a problem reading the input
+	 * @throws IllegalArgumentException
+	 *             Thrown if the STL is not properly formatted
+	 */
+	public static TriangleMesh readBinary(ReadableByteChannel in, STLParseListener listener) throws IOException {
+		TriangleMesh triangles = new TriangleMesh();
+		triangles.setBounds(readBinary(in, triangles, listener));
+		return triangles;
+	}
+
+	/**
+	 * Streams binary records into the mesh, or only to the listener if the
+	 * mesh is null
+	 * 
+	 * @return The bounds of the decoded vertices, laid out as in emptyBounds()
+	 */
+	private static double[] readBinary(ReadableByteChannel in, TriangleMesh triangles, STLParseListener listener)
+			throws IOException {
+		Logger.getLogger(STLParser.class.getName()).log(Level.FINEST, "Parsing binary STL format");
+		ByteBuffer buf = ByteBuffer.allocate(STREAM_RECORDS * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		buf.limit(84);
+		if (!fill(in, buf)) {
+			throw new IllegalArgumentException("invalid binary file, length<84");
+		}
+		double[] bounds = emptyBounds();
+		long decoded = 0;
+		boolean more = true;
+		while (more) {
+			buf.clear();
+			more = fill(in, buf);
+			int records = buf.position() / RECORD_SIZE;
+			if (!more && buf.position() % RECORD_SIZE != 0) {
+				throw new IllegalArgumentException(
+						"Malformed STL binary at triangle number " + (decoded + records + 1));
+			}
+			if (triangles != null) {
+				if (decoded + records > (Integer.MAX_VALUE - 8) / 3) {
+					throw new IllegalArgumentException("Too many triangles in STL binary");
+				}
+				triangles.setSize((int) decoded + records);
+			}
+			// without a mesh the indices only matter for messages
+			decodeRecords(buf, 0, (int) Math.min(decoded, Integer.MAX_VALUE - records), records, triangles,
+					bounds, listener);
+			decoded += records;
+		}
+		return bounds;
+	}
+
+	/**
+	 * Reads until the buffer is full or the input runs out
+	 * 
+	 * @return false if the input ran out first
+	 */
+	private static boolean fill(ReadableByteChannel in, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			if (in.read(buf) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Size in bytes of one binary STL record: normal, three vertices and the
+	 * attribute byte count
+	 */
+	private static final int RECORD_SIZE = 50;
+
+	/**
+	 * Number of records mapped at a time, about 50 MB
+	 */
+	private static final int WINDOW_RECORDS = 1 << 20;
+
+	/**
+	 * Number of records read at a time from a stream, about 200 KB
+	 */
+	private static final int STREAM_RECORDS = 1 << 12;
+
+	/**
+	 * Number of records below which a parallel decode stops splitting, about
+	 * 3 MB
+	 */
+	private static final int SPLIT_RECORDS = 1 << 16;
+
+	/**
+	 * The triangle count in the header is not trusted, as many whole records
+	 * as there are get read.
+	 * 
+	 * @return The number of records in a binary STL file of the given length
+	 */
+	private static int countRecords(long fileLength) {
+		long numberTriangles = (fileLength - 84) / RECORD_SIZE;
+		if (fileLength < 84 || 84 + numberTriangles * RECORD_SIZE != fileLength) {
+			throw new IllegalArgumentException("Malformed STL binary at triangle number " + (numberTriangles + 1));
+		}
+		// each triangle takes three slots in the mesh's arrays
+		if (numberTriangles > (Integer.MAX_VALUE - 8) / 3) {
+			throw new IllegalArgumentException("Too many triangles in STL binary: " + numberTriangles);
+		}
+		return (int) numberTriangles;
+	}
+
+	/**
+	 * Decodes the records first to first + count of the file, a window at a
+	 * time, into the same triangles of the mesh.
+	 * 
+	 * @return The bounds of the decoded vertices, laid out as in emptyBounds()
+	 */
+	private static double[] decodeWindows(FileChannel channel, int first, int count, TriangleMesh triangles,
+			STLParseListener listener) throws IOException {
+		double[] bounds = emptyBounds();
+		int end = first + count;
+		for (int start = first; start < end; start += WINDOW_RECORDS) {
+			int records = Math.min(WINDOW_RECORDS, end - start);
+			ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, 84 + (long) start * RECORD_SIZE,
+					(long) records * RECORD_SIZE);
+			window.order(ByteOrder.LITTLE_ENDIAN);
+			decodeRecords(window, 0, start, records, triangles, bounds, listener);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Decodes count records, the first of which starts at offset in the
+	 * (little-endian) buffer, into the mesh (if there is one) starting at
+	 * triangle first. The bounds are widened to cover every decoded vertex.
+	 */
+	private static void decodeRecords(ByteBuffer buf, int offset, int first, int count, TriangleMesh triangles,
+			double[] bounds, STLParseListener listener) {
+		double minX = bounds[0], minY = bounds[1], minZ = bounds[2];
+		double maxX = bounds[3], maxY = bounds[4], maxZ = bounds[5];
+		int t = first;
+		try {
+			for (; t < first + count; t++, offset += RECORD_SIZE) {
+				// the vertices follow the normal
+				int v = offset + 12;
+				double x0 = buf.getFloat(v), y0 = buf.getFloat(v + 4), z0 = buf.getFloat(v + 8);
+				double x1 = buf.getFloat(v + 12), y1 = buf.getFloat(v + 16), z1 = buf.getFloat(v + 20);
+				double x2 = buf.getFloat(v + 24), y2 = buf.getFloat(v + 28), z2 = buf.getFloat(v + 32);
+				// the attribute byte count is not used (yet)
+				if (triangles != null) {
+					triangles.setTriangle(t, x0, y0, z0, x1, y1, z1, x2, y2, z2);
+				}
+				if (listener != null) {
+					listener.facet(buf.getFloat(offset), buf.getFloat(offset + 4), buf.getFloat(offset + 8));
+					listener.vertex(x0, y0, z0);
+					listener.vertex(x1, y1, z1);
+					listener.vertex(x2, y2, z2);
+				}
+
+				minX = Math.min(minX, Math.min(x0, Math.min(x1, x2)));
+				minY = Math.min(minY, Math.min(y0, Math.min(y1, y2)));
+				minZ = Math.min(minZ, Math.min(z0, Math.min(z1, z2)));
+				maxX = Math.max(maxX, Math.max(x0, Math.max(x1, x2)));
+				maxY = Math.max(maxY, Math.max(y0, Math.max(y1, y2)));
+				maxZ = Math.max(maxZ, Math.max(z0, Math.max(z1, z2)));
+			}
+		} catch (IndexOutOfBoundsException ex) {
+			throw new IllegalArgumentException("Malformed STL binary at triangle number " + (t + 1), ex);
+		}
+		bounds[0] = minX;
+		bounds[1] = minY;
+		bounds[2] = minZ;
+		bounds[3] = maxX;
+		bounds[4] = maxY;
+		bounds[5] = maxZ;
+	}
+
+	/**
+	 * @return { minX, minY, minZ, maxX, maxY, maxZ } ready to be widened
+	 */
+	private static double[] emptyBounds() {
+		return new double[] { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, //
+				-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+	}
+
+	/**
+	 * Decodes a range of binary records, splitting it in half until it is
+	 * small enough to decode directly. Returns the bounds of its range.
+	 */
+	private static class DecodeTask extends RecursiveTask<double[]> {
+		private static final long serialVersionUID = 1L;
+		private final FileChannel channel;
+		private final TriangleMesh triangles;
+		private final int first, count;
+		private final STLParseListener listener;
+
+		DecodeTask(FileChannel channel, TriangleMesh triangles, int first, int count, STLParseListener listener) {
+			this.channel = channel;
+			this.triangles = triangles;
+			this.first = first;
+			this.count = count;
+			this.listener = listener;
+		}
+
+		@Override
+		protected double[] compute() {
+			if (count <= SPLIT_RECORDS) {
+				try {
+					return decodeWindows(channel, first, count, triangles, listener);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+			int half = count / 2;
+			DecodeTask left = new DecodeTask(channel, triangles, first, half, listener);
+			DecodeTask right = new DecodeTask(channel, triangles, first + half, count - half, listener);
+			left.fork();
+			double[] bounds = right.compute();
+			double[] leftBounds = left.join();
+			for (int i = 0; i < 3; i++) {
+				bounds[i] = Math.min(bounds[i], leftBounds[i]);
+				bounds[i + 3] = Math.max(bounds[i + 3], leftBounds[i + 3]);
+			}
+			return bounds;
+		}
+	}
+
 	private float intToFloat(int in) {
 		// This code:
 		// return Float.intBitsToFloat(Integer.reverseBytes(in));
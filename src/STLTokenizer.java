@@ -0,0 +1,272 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits ASCII STL input into whitespace separated tokens straight from its
+ * bytes. The input is never decoded into a String or lowercased: keywords are
+ * matched case-insensitively in place and numbers are parsed from the bytes,
+ * so only a fixed size buffer is held no matter how large the input is.
+ */
+public class STLTokenizer {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Powers of ten that are exactly representable as doubles
+	 */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final ReadableByteChannel in;
+	private final ByteBuffer buffer;
+	private final byte[] bytes;
+	// bytes[0, limit) hold input, scanning continues from pos
+	private int pos = 0, limit = 0;
+	// input position of bytes[0]
+	private long bufferStart;
+	private boolean endOfInput = false;
+
+	private int tokenStart = 0, tokenEnd = 0;
+
+	/**
+	 * @param in
+	 *            the input, read from its current position on
+	 */
+	public STLTokenizer(ReadableByteChannel in) {
+		this(in, 0);
+	}
+
+	/**
+	 * @param in
+	 *            the input, read from its current position on
+	 * @param start
+	 *            the position the input is at, used for reporting
+	 */
+	public STLTokenizer(ReadableByteChannel in, long start) {
+		this.in = in;
+		this.bufferStart = start;
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		bytes = buffer.array();
+	}
+
+	/**
+	 * Advances to the next token
+	 *
+	 * @return false if the input ran out first
+	 * @throws IOException
+	 *             Thrown if the input could not be read
+	 * @throws IllegalArgumentException
+	 *             Thrown if a single token does not fit in the buffer
+	 */
+	public boolean next() throws IOException {
+		// skip whitespace
+		while (true) {
+			if (pos == limit) {
+				// nothing before pos needs keeping
+				tokenStart = tokenEnd = pos;
+				if (!fill()) {
+					return false;
+				}
+			}
+			if (!isWhitespace(bytes[pos])) {
+				break;
+			}
+			pos++;
+		}
+		tokenStart = pos;
+		while (true) {
+			if (pos == limit && !fill()) {
+				break;
+			}
+			if (isWhitespace(bytes[pos])) {
+				break;
+			}
+			pos++;
+		}
+		tokenEnd = pos;
+		return true;
+	}
+
+	/**
+	 * Advances until the current token is the given keyword
+	 *
+	 * @param keyword
+	 *            lowercase keyword
+	 * @return false if the input ran out first
+	 */
+	public boolean skipTo(String keyword) throws IOException {
+		while (next()) {
+			if (is(keyword)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param keyword
+	 *            lowercase keyword
+	 * @return Whether the current token is the keyword, ignoring case
+	 */
+	public boolean is(String keyword) {
+		if (tokenEnd - tokenStart != keyword.length()) {
+			return false;
+		}
+		for (int i = 0; i < keyword.length(); i++) {
+			int b = bytes[tokenStart + i];
+			if (b >= 'A' && b <= 'Z') {
+				b += 'a' - 'A';
+			}
+			if (b != keyword.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Advances to the next token and parses it as a number
+	 *
+	 * @throws NumberFormatException
+	 *             Thrown if the input ran out or the token is not a number
+	 */
+	public double nextDouble() throws IOException {
+		if (!next()) {
+			throw new NumberFormatException("Expected a number at end of input");
+		}
+		return toDouble();
+	}
+
+	/**
+	 * Parses the current token as a number. Plain decimal numbers whose digits
+	 * fit in a double's mantissa are converted directly from the bytes (one
+	 * exact multiply or divide, so the result is the same as
+	 * Double.parseDouble's). Anything else goes through Double.parseDouble.
+	 *
+	 * @throws NumberFormatException
+	 *             Thrown if the token is not a number
+	 */
+	public double toDouble() {
+		int i = tokenStart;
+		boolean negative = false;
+		if (i < tokenEnd && (bytes[i] == '-' || bytes[i] == '+')) {
+			negative = bytes[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int exponent = 0;
+		boolean anyDigits = false;
+		for (; i < tokenEnd && isDigit(bytes[i]); i++) {
+			mantissa = mantissa * 10 + (bytes[i] - '0');
+			anyDigits = true;
+			if (mantissa >= 1L << 53) {
+				return slowDouble();
+			}
+		}
+		if (i < tokenEnd && bytes[i] == '.') {
+			for (i++; i < tokenEnd && isDigit(bytes[i]); i++) {
+				mantissa = mantissa * 10 + (bytes[i] - '0');
+				exponent--;
+				anyDigits = true;
+				if (mantissa >= 1L << 53) {
+					return slowDouble();
+				}
+			}
+		}
+		if (!anyDigits) {
+			return slowDouble();
+		}
+		if (i < tokenEnd && (bytes[i] == 'e' || bytes[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < tokenEnd && (bytes[i] == '-' || bytes[i] == '+')) {
+				negativeExponent = bytes[i] == '-';
+				i++;
+			}
+			int exp = 0;
+			int start = i;
+			for (; i < tokenEnd && isDigit(bytes[i]) && exp < 1000; i++) {
+				exp = exp * 10 + (bytes[i] - '0');
+			}
+			if (i == start) {
+				return slowDouble();
+			}
+			exponent += negativeExponent ? -exp : exp;
+		}
+		if (i != tokenEnd) {
+			return slowDouble();
+		}
+		double value;
+		if (mantissa == 0) {
+			value = 0;
+		} else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+			value = mantissa * POWERS_OF_TEN[exponent];
+		} else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+			value = mantissa / POWERS_OF_TEN[-exponent];
+		} else {
+			return slowDouble();
+		}
+		return negative ? -value : value;
+	}
+
+	private double slowDouble() {
+		return Double.parseDouble(token());
+	}
+
+	/**
+	 * @return The current token, for messages
+	 */
+	public String token() {
+		return new String(bytes, tokenStart, tokenEnd - tokenStart, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @return The input position of the start of the current token
+	 */
+	public long position() {
+		return bufferStart + tokenStart;
+	}
+
+	/**
+	 * Moves the current token to the start of the buffer and reads more input
+	 * after it
+	 *
+	 * @return false if there was no more input
+	 */
+	private boolean fill() throws IOException {
+		if (endOfInput) {
+			return false;
+		}
+		int keep = pos - tokenStart;
+		if (keep == bytes.length) {
+			throw new IllegalArgumentException("Malformed STL syntax near byte " + position()
+					+ ", token longer than " + bytes.length + " bytes");
+		}
+		System.arraycopy(bytes, tokenStart, bytes, 0, keep);
+		bufferStart += tokenStart;
+		tokenEnd -= tokenStart;
+		tokenStart = 0;
+		pos = keep;
+		buffer.clear();
+		buffer.position(keep);
+		int read;
+		do {
+			read = in.read(buffer);
+		} while (read == 0);
+		if (read < 0) {
+			endOfInput = true;
+		}
+		limit = buffer.position();
+		return pos < limit;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+}
@@ -0,0 +1,265 @@
+import java.awt.geom.Point2D;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Every segment of a set of contours as they are drawn, simplified to a
+ * tolerance, in a bounding volume hierarchy for finding the nearest point on
+ * any of them. The hierarchy is a binary tree of bounding boxes, each node
+ * splitting its segments in half by their middles along the longer side of
+ * its box, down to a few segments per leaf. It is stored in primitive arrays
+ * in depth-first order, so a node's left child comes right after it.
+ *
+ * A search goes down the nearer child first and skips any box farther away
+ * than the nearest segment found so far. Like VertexIndex, it remembers how
+ * far each contour had been edited so it can tell when it is out of date.
+ */
+public class SegmentIndex {
+
+	private static final int SEGMENTS_PER_LEAF = 4;
+
+	private final Contour[] contours;
+	private final double[] levels;
+	private final int[] modCounts;
+	private final double tolerance;
+	// the segments of contour k are numbered first[k] to first[k + 1] - 1;
+	// segment s runs from point s to point end[s]
+	private final int[] first;
+	private final double[] xy;
+	private final int[] end;
+
+	// node n's box is box[4n] to box[4n + 3], min x, min y, max x, max y. A
+	// leaf holds segments order[start[n]] to order[start[n] + count[n] - 1];
+	// for others, count is 0 and the right child is start[n].
+	private final double[] box;
+	private final int[] start, count;
+	private final int[] order;
+	private int nodes;
+
+	/**
+	 * @param contours
+	 *            the contours at each level, such as TopoMap shows
+	 * @param tolerance
+	 *            the tolerance they are simplified to when drawn
+	 */
+	public SegmentIndex(Map<Double, Set<Contour>> contours, double tolerance) {
+		int n = 0;
+		for (Set<Contour> set : contours.values()) {
+			n += set.size();
+		}
+		this.contours = new Contour[n];
+		levels = new double[n];
+		modCounts = new int[n];
+		this.tolerance = tolerance;
+		first = new int[n + 1];
+		double[][] simplified = new double[n][];
+		int k = 0;
+		for (Map.Entry<Double, Set<Contour>> entry : contours.entrySet()) {
+			for (Contour contour : entry.getValue()) {
+				this.contours[k] = contour;
+				levels[k] = entry.getKey();
+				modCounts[k] = contour.modCount();
+				simplified[k] = contour.simplify(tolerance);
+				first[k + 1] = first[k] + simplified[k].length / 2;
+				k++;
+			}
+		}
+		int segments = first[n];
+		xy = new double[2 * segments];
+		end = new int[segments];
+		for (k = 0; k < n; k++) {
+			System.arraycopy(simplified[k], 0, xy, 2 * first[k], simplified[k].length);
+			for (int s = first[k]; s < first[k + 1]; s++) {
+				end[s] = s + 1 < first[k + 1] ? s + 1 : first[k];
+			}
+		}
+
+		order = new int[segments];
+		double[] middle = new double[2 * segments];
+		for (int s = 0; s < segments; s++) {
+			order[s] = s;
+			middle[2 * s] = (xy[2 * s] + xy[2 * end[s]]) / 2;
+			middle[2 * s + 1] = (xy[2 * s + 1] + xy[2 * end[s] + 1]) / 2;
+		}
+		// halving stops at more than half a leaf, so there are fewer nodes
+		// than segments
+		int maxNodes = Math.max(1, segments);
+		box = new double[4 * maxNodes];
+		start = new int[maxNodes];
+		count = new int[maxNodes];
+		if (segments > 0) {
+			build(0, segments, middle);
+		}
+	}
+
+	/**
+	 * Makes the node for segments order[lo] to order[hi - 1] and the nodes
+	 * under it
+	 */
+	private void build(int lo, int hi, double[] middle) {
+		int node = nodes++;
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = lo; i < hi; i++) {
+			int s = order[i];
+			minX = Math.min(minX, Math.min(xy[2 * s], xy[2 * end[s]]));
+			minY = Math.min(minY, Math.min(xy[2 * s + 1], xy[2 * end[s] + 1]));
+			maxX = Math.max(maxX, Math.max(xy[2 * s], xy[2 * end[s]]));
+			maxY = Math.max(maxY, Math.max(xy[2 * s + 1], xy[2 * end[s] + 1]));
+		}
+		box[4 * node] = minX;
+		box[4 * node + 1] = minY;
+		box[4 * node + 2] = maxX;
+		box[4 * node + 3] = maxY;
+		if (hi - lo <= SEGMENTS_PER_LEAF) {
+			start[node] = lo;
+			count[node] = hi - lo;
+			return;
+		}
+		int axis = maxX - minX >= maxY - minY ? 0 : 1;
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi - 1, mid, axis, middle);
+		build(lo, mid, middle);
+		start[node] = nodes;
+		build(mid, hi, middle);
+	}
+
+	/**
+	 * Reorders order[lo] to order[hi] so the segment whose middle is kth along
+	 * the axis is at k, those before it no further along, those after no less
+	 */
+	private void select(int lo, int hi, int k, int axis, double[] middle) {
+		while (lo < hi) {
+			double pivot = middle[2 * order[(lo + hi) >>> 1] + axis];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (middle[2 * order[i] + axis] < pivot) {
+					i++;
+				}
+				while (middle[2 * order[j] + axis] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int swap = order[i];
+					order[i++] = order[j];
+					order[j--] = swap;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return Whether the index still matches the contours at each level and
+	 *         the tolerance: the same contours at the same levels, none edited
+	 *         since it was built
+	 */
+	public boolean isCurrent(Map<Double, Set<Contour>> contours, double tolerance) {
+		if (tolerance != this.tolerance) {
+			return false;
+		}
+		int n = 0;
+		for (Set<Contour> set : contours.values()) {
+			n += set.size();
+		}
+		if (n != this.contours.length) {
+			return false;
+		}
+		for (int k = 0; k < this.contours.length; k++) {
+			Set<Contour> set = contours.get(levels[k]);
+			if (this.contours[k].modCount() != modCounts[k] || set == null || !set.contains(this.contours[k])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The nearest point on any segment, or null if there are none
+	 */
+	public SegmentSnap nearest(Point2D pt) {
+		return nearest(pt, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * @return The nearest point on any segment, if it is no farther than
+	 *         maxDistance, or null
+	 */
+	public SegmentSnap nearest(Point2D pt, double maxDistance) {
+		if (nodes == 0) {
+			return null;
+		}
+		double x = pt.getX(), y = pt.getY();
+		int best = -1;
+		double bestDistance = maxDistance * maxDistance, bestX = 0, bestY = 0;
+		// the tree is balanced, so its depth is about log2 of the number of
+		// leaves and the stack never holds more than one node per level
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			if (boxDistance(node, x, y) > bestDistance) {
+				continue;
+			}
+			if (count[node] == 0) {
+				int left = node + 1, right = start[node];
+				// the nearer child goes on top
+				if (boxDistance(left, x, y) <= boxDistance(right, x, y)) {
+					stack[top++] = right;
+					stack[top++] = left;
+				} else {
+					stack[top++] = left;
+					stack[top++] = right;
+				}
+				continue;
+			}
+			for (int i = start[node]; i < start[node] + count[node]; i++) {
+				int s = order[i];
+				double ax = xy[2 * s], ay = xy[2 * s + 1];
+				double dx = xy[2 * end[s]] - ax, dy = xy[2 * end[s] + 1] - ay;
+				double lengthSq = dx * dx + dy * dy;
+				double t = lengthSq == 0 ? 0 : ((x - ax) * dx + (y - ay) * dy) / lengthSq;
+				t = Math.max(0, Math.min(1, t));
+				double px = ax + t * dx, py = ay + t * dy;
+				double distance = (px - x) * (px - x) + (py - y) * (py - y);
+				if (distance < bestDistance || distance == bestDistance && (best < 0 || s < best)) {
+					best = s;
+					bestDistance = distance;
+					bestX = px;
+					bestY = py;
+				}
+			}
+		}
+		if (best < 0) {
+			return null;
+		}
+		// the contour whose run of numbers holds the segment
+		int low = 0, high = contours.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (first[mid] <= best) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return new SegmentSnap(contours[low], best - first[low], levels[low], bestX, bestY,
+				Math.sqrt(bestDistance));
+	}
+
+	/**
+	 * @return The square of the distance from (x, y) to node's box, 0 inside
+	 */
+	private double boxDistance(int node, double x, double y) {
+		double dx = Math.max(0, Math.max(box[4 * node] - x, x - box[4 * node + 2]));
+		double dy = Math.max(0, Math.max(box[4 * node + 1] - y, y - box[4 * node + 3]));
+		return dx * dx + dy * dy;
+	}
+}
@@ -0,0 +1,63 @@
+import java.awt.geom.Point2D;
+
+/**
+ * Where a point was snapped to: the nearest point on a segment of a contour
+ * as it is drawn, simplified to a tolerance
+ */
+public class SegmentSnap {
+
+	private final Contour contour;
+	private final int segment;
+	private final double level;
+	private final double x, y;
+	private final double distance;
+
+	SegmentSnap(Contour contour, int segment, double level, double x, double y, double distance) {
+		this.contour = contour;
+		this.segment = segment;
+		this.level = level;
+		this.x = x;
+		this.y = y;
+		this.distance = distance;
+	}
+
+	public Contour getContour() {
+		return contour;
+	}
+
+	/**
+	 * @return The segment's index: it runs from point segment of the
+	 *         contour's simplified points to the next, the last back to the
+	 *         first
+	 */
+	public int getSegment() {
+		return segment;
+	}
+
+	/**
+	 * @return The level of the contour
+	 */
+	public double getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return The point on the segment
+	 */
+	public Point2D getPoint() {
+		return new Point2D.Double(x, y);
+	}
+
+	/**
+	 * @return How far the point snapped was from the segment
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	@Override
+	public String toString() {
+		return "SegmentSnap[level " + level + ", segment " + segment + ", (" + x + ", " + y + "), distance "
+				+ distance + "]";
+	}
+}
@@ -0,0 +1,421 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * A read-only interval tree over intervals identified by int ids 0 to n - 1,
+ * built once and kept in flat primitive arrays.
+ * <p>
+ * Each node's center is the median of the midpoints of the intervals under
+ * it, so neither side gets more than half of them and the tree is balanced
+ * however skewed the data is. Every node keeps the intervals that contain its
+ * center in two runs of the same arrays, one sorted by start and one by end,
+ * so a stabbing query never sorts. Building presorts the intervals by
+ * midpoint, start and end once and then partitions all three stably at each
+ * node, which keeps every run sorted for O(n log n) in total. Subtrees are
+ * built in parallel on the common fork-join pool.
+ * <p>
+ * Queries only read, so any number of threads can query one tree at once.
+ */
+public class StaticIntervalTree {
+
+	/**
+	 * Number of intervals below which building stops forking
+	 */
+	private static final int SPLIT_INTERVALS = 1 << 13;
+
+	private final int size;
+	private final int root;
+
+	// A node's id is the position of its first overlapping interval in the
+	// entry arrays, and its overlapping intervals fill [id, overlapEnd[id]).
+	// Positions that are not a node's first entry are unused in these.
+	private final double[] center;
+	private final int[] left;
+	private final int[] right;
+	private final int[] overlapEnd;
+
+	// overlapping intervals of each node, sorted by start
+	private final double[] byStartStart, byStartEnd;
+	private final int[] byStartId;
+	// the same intervals, sorted by end
+	private final double[] byEndStart, byEndEnd;
+	private final int[] byEndId;
+
+	/**
+	 * Builds the tree, in parallel if there is more than one core
+	 *
+	 * @param starts
+	 *            start of each interval, by id
+	 * @param ends
+	 *            end of each interval, by id, no less than its start
+	 */
+	public StaticIntervalTree(double[] starts, double[] ends) {
+		this(starts, ends, Runtime.getRuntime().availableProcessors() > 1);
+	}
+
+	/**
+	 * @param starts
+	 *            start of each interval, by id
+	 * @param ends
+	 *            end of each interval, by id, no less than its start
+	 * @param parallel
+	 *            whether to build on the common fork-join pool
+	 */
+	public StaticIntervalTree(double[] starts, double[] ends, boolean parallel) {
+		if (starts.length != ends.length) {
+			throw new IllegalArgumentException("Got " + starts.length + " starts but " + ends.length + " ends");
+		}
+		size = starts.length;
+		center = new double[size];
+		left = new int[size];
+		right = new int[size];
+		overlapEnd = new int[size];
+
+		double[] middles = new double[size];
+		for (int i = 0; i < size; i++) {
+			if (ends[i] < starts[i]) {
+				throw new IllegalArgumentException("Interval " + i + " ends before it starts");
+			}
+			middles[i] = (starts[i] + ends[i]) / 2;
+		}
+		int[] byMiddle = sortedIds(middles, parallel);
+		byStartId = sortedIds(starts, parallel);
+		byEndId = sortedIds(ends, parallel);
+
+		Build build = new Build(starts, ends, middles, byMiddle, new int[size], parallel, 0, size);
+		if (parallel) {
+			ForkJoinPool.commonPool().invoke(build);
+		} else {
+			build.compute();
+		}
+		root = build.node;
+
+		byStartStart = new double[size];
+		byStartEnd = new double[size];
+		byEndStart = new double[size];
+		byEndEnd = new double[size];
+		for (int i = 0; i < size; i++) {
+			byStartStart[i] = starts[byStartId[i]];
+			byStartEnd[i] = ends[byStartId[i]];
+			byEndStart[i] = starts[byEndId[i]];
+			byEndEnd[i] = ends[byEndId[i]];
+		}
+	}
+
+	private StaticIntervalTree(int size, int root, double[] center, int[] left, int[] right, int[] overlapEnd,
+			double[] byStartStart, double[] byStartEnd, int[] byStartId, double[] byEndStart, double[] byEndEnd,
+			int[] byEndId) {
+		this.size = size;
+		this.root = root;
+		this.center = center;
+		this.left = left;
+		this.right = right;
+		this.overlapEnd = overlapEnd;
+		this.byStartStart = byStartStart;
+		this.byStartEnd = byStartEnd;
+		this.byStartId = byStartId;
+		this.byEndStart = byEndStart;
+		this.byEndEnd = byEndEnd;
+		this.byEndId = byEndId;
+	}
+
+	/**
+	 * Builds the subtree over positions [from, to) of the presorted id arrays,
+	 * which on entry hold exactly the subtree's intervals in each order
+	 */
+	private class Build extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final double[] starts, ends, middles;
+		private final int[] byMiddle, scratch;
+		private final boolean parallel;
+		private final int from, to;
+		// the built subtree's root, or -1 if it is empty
+		private int node = -1;
+
+		Build(double[] starts, double[] ends, double[] middles, int[] byMiddle, int[] scratch, boolean parallel,
+				int from, int to) {
+			this.starts = starts;
+			this.ends = ends;
+			this.middles = middles;
+			this.byMiddle = byMiddle;
+			this.scratch = scratch;
+			this.parallel = parallel;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (from == to) {
+				return;
+			}
+			double mid = middles[byMiddle[from + (to - from) / 2]];
+
+			// [from, low) end before the center, [low, high) contain it and
+			// [high, to) start after it, in all three orders
+			int low = from, high = from;
+			for (int i = from; i < to; i++) {
+				int id = byMiddle[i];
+				if (ends[id] < mid) {
+					low++;
+				} else if (!(starts[id] > mid)) {
+					high++;
+				}
+			}
+			high += low - from;
+			partition(byMiddle, mid, low, high);
+			partition(byStartId, mid, low, high);
+			partition(byEndId, mid, low, high);
+
+			// the median interval contains the center, so low < high
+			node = low;
+			center[node] = mid;
+			overlapEnd[node] = high;
+
+			Build leftBuild = new Build(starts, ends, middles, byMiddle, scratch, parallel, from, low);
+			Build rightBuild = new Build(starts, ends, middles, byMiddle, scratch, parallel, high, to);
+			if (parallel && to - from > SPLIT_INTERVALS) {
+				invokeAll(leftBuild, rightBuild);
+			} else {
+				leftBuild.compute();
+				rightBuild.compute();
+			}
+			left[node] = leftBuild.node;
+			right[node] = rightBuild.node;
+		}
+
+		/**
+		 * Stably moves the ids in [from, to) so those ending before mid come
+		 * first, then those containing it, then those starting after it
+		 */
+		private void partition(int[] ids, double mid, int low, int high) {
+			// subtrees being built at the same time use disjoint parts of
+			// the scratch array
+			System.arraycopy(ids, from, scratch, from, to - from);
+			int l = from, o = low, r = high;
+			for (int i = from; i < to; i++) {
+				int id = scratch[i];
+				if (ends[id] < mid) {
+					ids[l++] = id;
+				} else if (starts[id] > mid) {
+					ids[r++] = id;
+				} else {
+					ids[o++] = id;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The ids 0 to n - 1 stably sorted by key
+	 */
+	static int[] sortedIds(double[] keys, boolean parallel) {
+		int[] ids = new int[keys.length];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = i;
+		}
+		MergeSort sort = new MergeSort(keys, ids, new int[ids.length], parallel, 0, ids.length);
+		if (parallel) {
+			ForkJoinPool.commonPool().invoke(sort);
+		} else {
+			sort.compute();
+		}
+		return ids;
+	}
+
+	/**
+	 * Stable merge sort of ids by their keys, without boxing either
+	 */
+	private static class MergeSort extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final double[] keys;
+		private final int[] ids, scratch;
+		private final boolean parallel;
+		private final int from, to;
+
+		MergeSort(double[] keys, int[] ids, int[] scratch, boolean parallel, int from, int to) {
+			this.keys = keys;
+			this.ids = ids;
+			this.scratch = scratch;
+			this.parallel = parallel;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 32) {
+				// insertion sort
+				for (int i = from + 1; i < to; i++) {
+					int id = ids[i];
+					int j = i;
+					for (; j > from && Double.compare(keys[ids[j - 1]], keys[id]) > 0; j--) {
+						ids[j] = ids[j - 1];
+					}
+					ids[j] = id;
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			MergeSort lower = new MergeSort(keys, ids, scratch, parallel, from, mid);
+			MergeSort upper = new MergeSort(keys, ids, scratch, parallel, mid, to);
+			if (parallel && to - from > SPLIT_INTERVALS) {
+				invokeAll(lower, upper);
+			} else {
+				lower.compute();
+				upper.compute();
+			}
+			if (Double.compare(keys[ids[mid - 1]], keys[ids[mid]]) <= 0) {
+				return;
+			}
+			System.arraycopy(ids, from, scratch, from, to - from);
+			int a = from, b = mid;
+			for (int i = from; i < to; i++) {
+				if (b == to || (a < mid && Double.compare(keys[scratch[a]], keys[scratch[b]]) <= 0)) {
+					ids[i] = scratch[a++];
+				} else {
+					ids[i] = scratch[b++];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The number of intervals in the tree
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Stabbing query. Hands the id of every interval containing index to the
+	 * visitor, allocating nothing.
+	 *
+	 * @param index
+	 *            to query for.
+	 * @param visitor
+	 *            gets the id of every interval that contains index
+	 */
+	public void query(double index, IntConsumer visitor) {
+		int node = root;
+		while (node >= 0) {
+			if (index < center[node]) {
+				// everything here ends at or after the center, so only the
+				// start needs checking until it passes index
+				for (int i = node; i < overlapEnd[node] && byStartStart[i] <= index; i++) {
+					if (byStartEnd[i] >= index) {
+						visitor.accept(byStartId[i]);
+					}
+				}
+				node = left[node];
+			} else {
+				for (int i = overlapEnd[node] - 1; i >= node && byEndEnd[i] >= index; i--) {
+					if (byEndStart[i] <= index) {
+						visitor.accept(byEndId[i]);
+					}
+				}
+				node = right[node];
+			}
+		}
+	}
+
+	/**
+	 * Count-only stabbing query, for sizing buffers
+	 *
+	 * @param index
+	 *            to query for.
+	 * @return The number of intervals that contain index
+	 */
+	public int count(double index) {
+		int count = 0;
+		int node = root;
+		while (node >= 0) {
+			if (index < center[node]) {
+				for (int i = node; i < overlapEnd[node] && byStartStart[i] <= index; i++) {
+					if (byStartEnd[i] >= index) {
+						count++;
+					}
+				}
+				node = left[node];
+			} else {
+				for (int i = overlapEnd[node] - 1; i >= node && byEndEnd[i] >= index; i--) {
+					if (byEndStart[i] <= index) {
+						count++;
+					}
+				}
+				node = right[node];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the tree's arrays as they are, so read() needs no building
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(size);
+		out.writeInt(root);
+		for (int i = 0; i < size; i++) {
+			out.writeDouble(center[i]);
+			out.writeInt(left[i]);
+			out.writeInt(right[i]);
+			out.writeInt(overlapEnd[i]);
+		}
+		for (int i = 0; i < size; i++) {
+			out.writeDouble(byStartStart[i]);
+			out.writeDouble(byStartEnd[i]);
+			out.writeInt(byStartId[i]);
+		}
+		for (int i = 0; i < size; i++) {
+			out.writeDouble(byEndStart[i]);
+			out.writeDouble(byEndEnd[i]);
+			out.writeInt(byEndId[i]);
+		}
+	}
+
+	/**
+	 * Reads a tree written by write()
+	 *
+	 * @throws IllegalArgumentException
+	 *             Thrown if what was read is not a valid tree
+	 */
+	public static StaticIntervalTree read(DataInput in) throws IOException {
+		int size = in.readInt();
+		int root = in.readInt();
+		if (size < 0 || root < -1 || root >= size || (root < 0) != (size == 0)) {
+			throw new IllegalArgumentException("Not an interval tree of size " + size + " and root " + root);
+		}
+		double[] center = new double[size];
+		int[] left = new int[size], right = new int[size], overlapEnd = new int[size];
+		for (int i = 0; i < size; i++) {
+			center[i] = in.readDouble();
+			left[i] = in.readInt();
+			right[i] = in.readInt();
+			overlapEnd[i] = in.readInt();
+			if (left[i] < -1 || left[i] >= size || right[i] < -1 || right[i] >= size || overlapEnd[i] < 0
+					|| overlapEnd[i] > size) {
+				throw new IllegalArgumentException("Interval tree node " + i + " is out of range");
+			}
+		}
+		double[] byStartStart = new double[size], byStartEnd = new double[size];
+		int[] byStartId = new int[size];
+		for (int i = 0; i < size; i++) {
+			byStartStart[i] = in.readDouble();
+			byStartEnd[i] = in.readDouble();
+			byStartId[i] = in.readInt();
+		}
+		double[] byEndStart = new double[size], byEndEnd = new double[size];
+		int[] byEndId = new int[size];
+		for (int i = 0; i < size; i++) {
+			byEndStart[i] = in.readDouble();
+			byEndEnd[i] = in.readDouble();
+			byEndId[i] = in.readInt();
+		}
+		return new StaticIntervalTree(size, root, center, left, right, overlapEnd, byStartStart, byStartEnd,
+				byStartId, byEndStart, byEndEnd, byEndId);
+	}
+}
@@ -0,0 +1,258 @@
+import java.awt.geom.Point2D;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Contours an STL file without ever holding all of its triangles in memory.
+ * One streaming pass over the file sorts the triangles into square xy tiles
+ * on disk, each triangle going to the tile its centroid is in. Tiles are then
+ * loaded one at a time and contoured at every level. Loops that close inside
+ * a tile are done; the open chains left over end on tile seams and are
+ * stitched to the chains from neighboring tiles with the same endpoint
+ * matching TopoMap uses, so the result is the same set of Contours.
+ *
+ * Memory use is bounded by the largest tile plus the contours themselves.
+ * Each tile keeps a file open during the tiling pass, so the tile size should
+ * leave a reasonable number of tiles across the mesh.
+ */
+public class TiledContourer implements Closeable {
+
+	/**
+	 * Bytes per triangle in a tile file: nine doubles, corner by corner
+	 */
+	private static final int TRIANGLE_BYTES = 9 * Double.BYTES;
+
+	private final Path directory;
+	private final double tileSize;
+	// in a fixed order so contouring is repeatable
+	private final Map<Long, Tile> tiles = new TreeMap<Long, Tile>();
+	private final double[][] bounds;
+
+	private static class Tile {
+		private Path file;
+		private DataOutputStream out;
+		private int triangles = 0;
+		private double zMin = Double.MAX_VALUE, zMax = -Double.MAX_VALUE;
+
+		private boolean crosses(double z) {
+			return zMin <= z && z <= zMax;
+		}
+	}
+
+	/**
+	 * Tiles the file in a temporary directory
+	 *
+	 * @param stlPath
+	 *            STL file to contour, possibly gzip compressed
+	 * @param tileSize
+	 *            width and height of a tile, in the file's x/y units
+	 */
+	public TiledContourer(Path stlPath, double tileSize) throws IOException {
+		this(stlPath, tileSize, null);
+	}
+
+	/**
+	 * @param stlPath
+	 *            STL file to contour, possibly gzip compressed
+	 * @param tileSize
+	 *            width and height of a tile, in the file's x/y units
+	 * @param workDirectory
+	 *            where to put the tiles, or null for the system's temporary
+	 *            directory. They need as much space as the mesh's vertices as
+	 *            doubles.
+	 */
+	public TiledContourer(Path stlPath, double tileSize, Path workDirectory) throws IOException {
+		if (!(tileSize > 0)) {
+			throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+		}
+		this.tileSize = tileSize;
+		directory = workDirectory == null ? Files.createTempDirectory("tiles")
+				: Files.createTempDirectory(workDirectory, "tiles");
+		directory.toFile().deleteOnExit();
+		try {
+			bounds = STLParser.scanSTLFile(stlPath, new TileWriter());
+			for (Tile tile : tiles.values()) {
+				tile.out.close();
+				tile.out = null;
+			}
+		} catch (UncheckedIOException ex) {
+			close();
+			throw ex.getCause();
+		} catch (IOException | RuntimeException ex) {
+			close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Collects each facet's corners and appends the facet to its tile's file
+	 */
+	private class TileWriter implements STLParseListener {
+		private final double[] corners = new double[9];
+		private int count = 0;
+
+		@Override
+		public void facet(double normalX, double normalY, double normalZ) {
+			count = 0;
+		}
+
+		@Override
+		public void vertex(double x, double y, double z) {
+			corners[count++] = x;
+			corners[count++] = y;
+			corners[count++] = z;
+			if (count == corners.length) {
+				count = 0;
+				try {
+					write(corners);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+		}
+	}
+
+	private void write(double[] corners) throws IOException {
+		double centerX = (corners[0] + corners[3] + corners[6]) / 3;
+		double centerY = (corners[1] + corners[4] + corners[7]) / 3;
+		long key = ((long) (int) Math.floor(centerX / tileSize) << 32)
+				| ((int) Math.floor(centerY / tileSize) & 0xffffffffL);
+		Tile tile = tiles.get(key);
+		if (tile == null) {
+			tile = new Tile();
+			tile.file = Files.createTempFile(directory, "tile", ".bin");
+			tile.file.toFile().deleteOnExit();
+			tile.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tile.file), 1 << 16));
+			tiles.put(key, tile);
+		}
+		if (tile.triangles == Integer.MAX_VALUE / TRIANGLE_BYTES) {
+			throw new IllegalArgumentException("Too many triangles in one tile, use a smaller tile size");
+		}
+		for (double d : corners) {
+			tile.out.writeDouble(d);
+		}
+		tile.triangles++;
+		tile.zMin = Math.min(tile.zMin, Math.min(corners[2], Math.min(corners[5], corners[8])));
+		tile.zMax = Math.max(tile.zMax, Math.max(corners[2], Math.max(corners[5], corners[8])));
+	}
+
+	/**
+	 * @return { {minX, minY, minZ}, {maxX, maxY, maxZ} } over all vertices
+	 */
+	public double[][] getBounds() {
+		return new double[][] { bounds[0].clone(), bounds[1].clone() };
+	}
+
+	/**
+	 * @return The number of tiles that have any triangles
+	 */
+	public int getTileCount() {
+		return tiles.size();
+	}
+
+	/**
+	 * Contours every level, loading each tile that spans any of them once
+	 *
+	 * @return The contours at each of the thresholds
+	 * @throws IOException
+	 *             Thrown if a tile could not be read back
+	 */
+	public Map<Double, Set<Contour>> createContours(double[] thresholds) throws IOException {
+		return createContours(thresholds, EndpointTable.DEFAULT_QUANTUM);
+	}
+
+	/**
+	 * Contours every level, loading each tile that spans any of them once
+	 *
+	 * @param quantum
+	 *            grid spacing for matching up segment ends, see EndpointTable
+	 * @return The contours at each of the thresholds
+	 * @throws IOException
+	 *             Thrown if a tile could not be read back
+	 */
+	public Map<Double, Set<Contour>> createContours(double[] thresholds, double quantum) throws IOException {
+		Map<Double, Set<Contour>> contours = new TreeMap<Double, Set<Contour>>();
+		// chains that run off the edge of the tiles seen so far, by level
+		Map<Double, EndpointTable> open = new HashMap<Double, EndpointTable>();
+		for (double threshold : thresholds) {
+			contours.put(threshold, new HashSet<Contour>());
+			open.put(threshold, new EndpointTable(bounds, quantum));
+		}
+
+		for (Tile tile : tiles.values()) {
+			TriangleMesh mesh = null;
+			LevelSweep sweep = null;
+			// in ascending order, as the sweep needs
+			for (double threshold : contours.keySet()) {
+				if (!tile.crosses(threshold)) {
+					continue;
+				}
+				if (mesh == null) {
+					mesh = read(tile);
+					sweep = new LevelSweep(mesh);
+				}
+				TriangleMesh tileMesh = mesh;
+				// on the same grid as the open chains, so their ends match
+				EndpointTable consolidator = new EndpointTable(bounds, quantum);
+				sweep.advanceTo(threshold);
+				sweep.forEachActive(t -> TopoMap.addSegment(tileMesh, t, threshold, consolidator));
+				for (List<Point2D> chain : consolidator.chains()) {
+					if (consolidator.isClosed(chain)) {
+						contours.get(threshold).add(new Contour(chain));
+					} else {
+						open.get(threshold).add(chain);
+					}
+				}
+			}
+		}
+
+		// whatever is left has been stitched as far as it goes
+		for (Map.Entry<Double, EndpointTable> entry : open.entrySet()) {
+			for (List<Point2D> chain : entry.getValue().chains()) {
+				contours.get(entry.getKey()).add(new Contour(chain));
+			}
+		}
+		return contours;
+	}
+
+	private TriangleMesh read(Tile tile) throws IOException {
+		TriangleMesh mesh = new TriangleMesh(tile.triangles);
+		try (FileChannel channel = FileChannel.open(tile.file, StandardOpenOption.READ)) {
+			DoubleBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) tile.triangles * TRIANGLE_BYTES)
+					.asDoubleBuffer();
+			for (int t = 0; t < tile.triangles; t++) {
+				mesh.add(in.get(), in.get(), in.get(), in.get(), in.get(), in.get(), in.get(), in.get(), in.get());
+			}
+		}
+		return mesh;
+	}
+
+	/**
+	 * Deletes the tiles
+	 */
+	@Override
+	public void close() throws IOException {
+		for (Tile tile : tiles.values()) {
+			if (tile.out != null) {
+				tile.out.close();
+				tile.out = null;
+			}
+			Files.deleteIfExists(tile.file);
+		}
+		Files.deleteIfExists(directory);
+	}
+}
@@ -5,12 +5,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -18,53 +18,175 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class TopoMap {
 
-	private IntervalTree<Triangle> mesh;
-	private Map<Double, Set<Contour>> contours = new TreeMap<Double, Set<Contour>>();
-	private Map<Point2D, Set<Point2D>> searchMap = new HashMap<Point2D, Set<Point2D>>();
+	private TriangleMesh mesh;
+	private StaticIntervalTree zIndex;
+	// made on the first multi-level contouring
+	private LevelSweep sweep;
+	// made on the first contouring
+	private MeshTopology topology;
+	// set instead of the mesh and index if the mesh is a height map
+	private Heightfield heightfield;
+	// made on the first question about how the contours change with level
+	private ContourTree contourTree;
+	private boolean parallel = Runtime.getRuntime().availableProcessors() > 1;
+
+	/**
+	 * Number of consecutive levels contoured by one task. Each run of levels
+	 * starts its sweep with a stabbing query, and the runs are the same
+	 * whether they are contoured in parallel or not.
+	 */
+	private static final int LEVELS_PER_TASK = 4;
+	// how many triangles are traced between checks for being cancelled
+	private static final int TRIANGLES_PER_CHECK = 1 << 12;
+	// on a pool thread, whether the contouring its task is part of has been
+	// cancelled
+	private static final ThreadLocal<BooleanSupplier> cancelled = new ThreadLocal<BooleanSupplier>();
+	private static final int CONTOURS_PER_TASK = 64;
+	private double quantum = EndpointTable.DEFAULT_QUANTUM;
+	/**
+	 * Tolerance contours are simplified to for drawing, searching and
+	 * writing out, unless set otherwise: this fraction of the map's width or
+	 * height, whichever is larger
+	 */
+	private static final double DEFAULT_TOLERANCE = 1.0 / 5000;
+	private double tolerance;
+	/**
+	 * Contours enclosing less than this area are left out of the levels
+	 * shown, unless the filter is set otherwise
+	 */
+	private static final double MIN_AREA = 15;
+	// which contours of a level are shown
+	private ContourFilter levelFilter = ContourFilter.minArea(MIN_AREA);
+	// set instead of the mesh and index when contouring out of core
+	private TiledContourer tiles;
+	// the contours shown. Levels are added, removed and filtered under its
+	// lock, so another thread can take a snapshot of it.
+	private final Map<Double, Set<Contour>> contours = new TreeMap<Double, Set<Contour>>();
+	// every level contoured so far, as it came out, so showing a level again
+	// costs nothing. Levels are shown as copies, so editing the contours
+	// shown leaves these alone.
+	private final Map<Double, Set<Contour>> levelCache = new ConcurrentHashMap<Double, Set<Contour>>();
+	// the vertices of the contours shown at each level, made when first
+	// snapped to and remade once the contours change; guarded by itself
+	private final Map<Double, VertexIndex> vertexIndexes = new HashMap<Double, VertexIndex>();
+	/**
+	 * How far the points written into the scripted edits below may be from
+	 * the vertices they mean, so the edits survive slicing a little
+	 * differently
+	 */
+	private static final double SCRIPT_TOLERANCE = 0.01;
+	// the vertices of every contour shown, for query. Remade under its own
+	// lock, so a query never waits on anything but the remaking.
+	private volatile VertexIndex searchIndex;
+	private final Object searchIndexLock = new Object();
+	// the segments of every contour shown, as drawn, for queryContour. Like
+	// the search index, remade under its own lock.
+	private volatile SegmentIndex segmentIndex;
+	private final Object segmentIndexLock = new Object();
+	// whether a remaking of the segment index has been started in the
+	// background and hasn't finished
+	private final AtomicBoolean segmentIndexPending = new AtomicBoolean();
 	private double[][] bounds;
 
 	public TopoMap(String file) throws IOException {
+		this(file, null);
+	}
 
-		Path stlPath = Paths.get(file);
-
-		List<Triangle> preMesh = STLParser.parseSTLFile(stlPath);
-		bounds = getBounds(preMesh);
-		mesh = convertTriangles(preMesh);
+	/**
+	 * @param file
+	 *            STL file to load
+	 * @param listener
+	 *            gets every facet normal and vertex as the file is parsed, for
+	 *            example a ParseStatistics to help pick contour levels; may be
+	 *            null
+	 */
+	public TopoMap(String file, STLParseListener listener) throws IOException {
+		this(file, listener, true);
 	}
 
-	private IntervalTree<Triangle> convertTriangles(List<Triangle> mesh) {
-		List<IntervalTree.IntervalData<Triangle>> list = new ArrayList<>();
-		for (Triangle t : mesh) {
-			Vec3d[] vertices = t.getVertices();
-			double zMin = Double.min(vertices[0].z, Double.min(vertices[1].z, vertices[2].z));
-			double zMax = Double.max(vertices[0].z, Double.max(vertices[1].z, vertices[2].z));
+	/**
+	 * @param file
+	 *            STL file to load
+	 * @param listener
+	 *            gets every facet normal and vertex as the file is parsed; may
+	 *            be null. A listener needs the file parsed, so the cache is
+	 *            not read when there is one (it is still written).
+	 * @param useCache
+	 *            whether to load from and save to the file's MeshCache
+	 */
+	public TopoMap(String file, STLParseListener listener, boolean useCache) throws IOException {
+
+		Path stlPath = Paths.get(file);
 
-			list.add(new IntervalTree.IntervalData<Triangle>(zMin, zMax, t));
+		MeshCache cache = useCache && listener == null ? MeshCache.read(stlPath) : null;
+		if (cache != null) {
+			mesh = cache.getMesh();
+			zIndex = cache.getZIndex();
+		} else {
+			mesh = STLParser.parseSTLFile(stlPath, Runtime.getRuntime().availableProcessors() > 1, listener);
+			zIndex = buildZIndex(mesh);
+			if (useCache) {
+				try {
+					new MeshCache(mesh, zIndex).write(stlPath);
+				} catch (IOException ex) {
+					Logger.getLogger(TopoMap.class.getName()).log(Level.WARNING,
+							"Could not write cache for " + stlPath, ex);
+				}
+			}
 		}
+		bounds = mesh.getBounds();
+		tolerance = defaultTolerance(bounds);
+		heightfield = Heightfield.detect(mesh);
+		if (heightfield != null) {
+			// the grid is all contouring needs
+			mesh = null;
+			zIndex = null;
+		}
+	}
 
-		return new IntervalTree<Triangle>(list);
+	/**
+	 * Sets up out-of-core contouring: the file is split into tiles on disk by
+	 * a TiledContourer instead of being loaded, so it can be larger than the
+	 * heap. Only the contours themselves are kept in memory.
+	 * 
+	 * @param file
+	 *            STL file to contour
+	 * @param tileSize
+	 *            width and height of a tile, in the file's x/y units
+	 */
+	public TopoMap(String file, double tileSize) throws IOException {
+		tiles = new TiledContourer(Paths.get(file), tileSize);
+		bounds = tiles.getBounds();
+		tolerance = defaultTolerance(bounds);
 	}
 
-	private double[][] getBounds(List<Triangle> mesh) {
-		double[] min = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
-		double[] max = { Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE };
-		for (Triangle t : mesh) {
-			for (Vec3d vertex : t.getVertices()) {
-				double[] array = { vertex.x, vertex.y, vertex.z };
-				for (int i = 0; i < 3; i++) {
-					if (array[i] < min[i]) {
-						min[i] = array[i];
-					}
-					if (array[i] > max[i]) {
-						max[i] = array[i];
-					}
-				}
-			}
+	private static double defaultTolerance(double[][] bounds) {
+		return DEFAULT_TOLERANCE * Math.max(bounds[1][0] - bounds[0][0], bounds[1][1] - bounds[0][1]);
+	}
+
+	private StaticIntervalTree buildZIndex(TriangleMesh mesh) {
+		double[] zMin = new double[mesh.size()];
+		double[] zMax = new double[mesh.size()];
+		for (int t = 0; t < mesh.size(); t++) {
+			zMin[t] = mesh.getZMin(t);
+			zMax[t] = mesh.getZMax(t);
 		}
-		return new double[][] { min, max };
+		return new StaticIntervalTree(zMin, zMax);
 	}
 
 	public double[][] getBounds() {
@@ -72,12 +194,11 @@ public class TopoMap {
 	}
 
 	public void createContours(double[] thresholds) {
-		contours.clear();
-		for (double threshold : thresholds) {
-			contours.put(threshold, process(threshold));
+		synchronized (contours) {
+			contours.clear();
 		}
+		contourAll(thresholds);
 		doSeattleThings(thresholds);
-		removeTinys(15);
 	}
 
 	private void doSeattleThings(double[] thresholds) {
@@ -97,71 +218,576 @@ public class TopoMap {
 	 * @param step
 	 */
 	public void createContours(double min, double max, double step) {
-		contours.clear();
+		synchronized (contours) {
+			contours.clear();
+		}
+		List<Double> thresholds = new ArrayList<Double>();
 		for (double threshold = min; threshold <= max; threshold += step) {
-			contours.put(threshold, process(threshold));
+			thresholds.add(threshold);
 		}
+		double[] array = new double[thresholds.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = thresholds.get(i);
+		}
+		contourAll(array);
 	}
 
-	private Set<Contour> process(double zThresh) {
-		Map<Point2D, List<Point2D>> consolidator = new HashMap<Point2D, List<Point2D>>();
-		Set<Contour> contour = new HashSet<Contour>();
-		// in case you need to change double equality
-		double almostZero = 0.0000;
+	/**
+	 * Shows the contours at each threshold, making the ones that aren't
+	 * cached yet
+	 */
+	private void contourAll(double[] thresholds) {
+		Map<Double, Set<Contour>> levels = new HashMap<Double, Set<Contour>>();
+		for (double threshold : thresholds) {
+			Set<Contour> cached = levelCache.get(threshold);
+			if (cached != null) {
+				levels.put(threshold, cached);
+			}
+		}
+		double[] missing = Arrays.stream(thresholds).filter(level -> !levels.containsKey(level)).toArray();
+		if (missing.length > 0) {
+			levels.putAll(computeLevels(missing));
+		}
+		synchronized (contours) {
+			for (double threshold : thresholds) {
+				contours.put(threshold, copy(levels.get(threshold), levelFilter));
+			}
+		}
+	}
 
-		IntervalTree.IntervalData<Triangle> interval = mesh.query(zThresh);
+	/**
+	 * Contours the levels and caches them. Several threads can contour at
+	 * once, as the sweep and the topology are only read once made; out of
+	 * core, one at a time, as the tiles are shared. If two threads contour
+	 * the same level, the first to finish is cached.
+	 *
+	 * @return The contours at each level, as cached
+	 * @throws CancellationException
+	 *             Thrown if the thread is interrupted, in which case nothing
+	 *             is cached
+	 */
+	private Map<Double, Set<Contour>> computeLevels(double[] thresholds) {
+		Map<Double, Set<Contour>> computed = new HashMap<Double, Set<Contour>>();
+		if (tiles != null) {
+			try {
+				Map<Double, Set<Contour>> tiled;
+				synchronized (tiles) {
+					tiled = tiles.createContours(thresholds, quantum);
+				}
+				checkInterrupt();
+				tiled.forEach((level, levelContours) -> computed.put(level, cache(level, levelContours)));
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+			return computed;
+		}
+		double[] levels = Arrays.stream(thresholds).sorted().distinct().toArray();
+		List<List<List<Point2D>>> chains = heightfield != null ? traceHeightfield(levels) : traceMesh(levels);
+		checkInterrupt();
+
+		// number the contours level by level, as a serial run would
+		int[] firstIds = new int[levels.length];
+		for (int i = 0; i < levels.length; i++) {
+			firstIds[i] = Contour.reserveIds(chains.get(i).size());
+		}
+		List<Set<Contour>> levelContours = new ArrayList<Set<Contour>>(
+				Collections.<Set<Contour>>nCopies(levels.length, null));
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < levels.length; i++) {
+			int level = i;
+			tasks.add(() -> {
+				levelContours.set(level, toContours(chains.get(level), firstIds[level]));
+				return null;
+			});
+		}
+		run(tasks);
+		checkInterrupt();
+		for (int i = 0; i < levels.length; i++) {
+			computed.put(levels[i], cache(levels[i], levelContours.get(i)));
+		}
+		return computed;
+	}
+
+	/**
+	 * Caches the level unless another thread got there first
+	 * 
+	 * @return The contours cached
+	 */
+	private Set<Contour> cache(double level, Set<Contour> levelContours) {
+		Set<Contour> cached = levelCache.putIfAbsent(level, levelContours);
+		return cached != null ? cached : levelContours;
+	}
 
-		if (interval == null) {
-			return contour;
+	/**
+	 * @throws CancellationException
+	 *             Thrown if this thread is interrupted, or on a pool thread,
+	 *             if the contouring its task is for has been cancelled
+	 */
+	private static void checkInterrupt() {
+		BooleanSupplier stop = cancelled.get();
+		if (Thread.currentThread().isInterrupted() || stop != null && stop.getAsBoolean()) {
+			throw new CancellationException("Interrupted while contouring");
 		}
+	}
 
-		Collection<Triangle> intersectingTriangles = mesh.query(zThresh).getData();
+	/**
+	 * Contours a single level, or gets it from the cache if it has been
+	 * contoured before. This doesn't change the contours shown, so it can be
+	 * called from a background thread while they are in use, for example to
+	 * have a level ready before addLevel.
+	 *
+	 * @return The contours at the level, not to be changed
+	 * @throws CancellationException
+	 *             Thrown if the thread is interrupted before the level is done
+	 */
+	public Set<Contour> computeLevel(double threshold) {
+		Set<Contour> cached = levelCache.get(threshold);
+		if (cached == null) {
+			cached = computeLevels(new double[] { threshold }).get(threshold);
+		}
+		return Collections.unmodifiableSet(cached);
+	}
+
+	/**
+	 * Shows the contours at another level, contouring it unless it is cached
+	 */
+	public void addLevel(double threshold) {
+		Set<Contour> level = copy(computeLevel(threshold), levelFilter);
+		synchronized (contours) {
+			contours.put(threshold, level);
+		}
+	}
+
+	/**
+	 * @return Copies of the contours the filter keeps, to be shown and edited
+	 *         without changing the ones cached
+	 */
+	private static Set<Contour> copy(Set<Contour> level, ContourFilter filter) {
+		Set<Contour> copies = new HashSet<Contour>();
+		for (Contour contour : level) {
+			if (filter.keep(contour)) {
+				copies.add(new Contour(contour));
+			}
+		}
+		return copies;
+	}
 
-		for (Triangle t : intersectingTriangles) {
-			int countBelow = 0, countAbove = 0;
-			Vec3d prev = null;
+	/**
+	 * Sets which contours of a level are shown, from the next level shown
+	 * on; by default, those enclosing at least MIN_AREA
+	 */
+	public void setLevelFilter(ContourFilter filter) {
+		levelFilter = filter;
+	}
 
-			// figure out whether this triangle intersects the z = zThresh plane
-			for (Vec3d vertex : t.getVertices()) {
-				// if not zero
-				if (!((vertex.z - zThresh) * (vertex.z - zThresh) <= almostZero)) {
-					// is below
-					if (vertex.z < zThresh) {
-						countBelow++;
-					} else // is above
-					{
-						countAbove++;
-					}
+	/**
+	 * Stops showing the contours at a level. They stay cached, so adding the
+	 * level back costs nothing, but shows them as they were contoured, without
+	 * any edits made since.
+	 */
+	public void removeLevel(double threshold) {
+		synchronized (contours) {
+			contours.remove(threshold);
+		}
+	}
+
+	/**
+	 * @return The levels shown, in ascending order
+	 */
+	public List<Double> getLevels() {
+		synchronized (contours) {
+			return new ArrayList<Double>(contours.keySet());
+		}
+	}
+
+	/**
+	 * @return A copy of the contours shown, as they are now, which other
+	 *         threads changing the levels shown won't touch
+	 */
+	private Map<Double, Set<Contour>> snapshot() {
+		synchronized (contours) {
+			Map<Double, Set<Contour>> copy = new TreeMap<Double, Set<Contour>>();
+			for (Map.Entry<Double, Set<Contour>> entry : contours.entrySet()) {
+				copy.put(entry.getKey(), new HashSet<Contour>(entry.getValue()));
+			}
+			return copy;
+		}
+	}
+
+	/**
+	 * Forgets every level contoured so far, other than the ones shown
+	 */
+	public void clearCache() {
+		levelCache.clear();
+	}
+
+	/**
+	 * @return The contour tree of the surface, made the first time it is
+	 *         needed
+	 * @throws IllegalStateException
+	 *             Thrown when contouring out of core, as there is no mesh in
+	 *             memory to build it from
+	 */
+	public synchronized ContourTree getContourTree() {
+		if (contourTree == null) {
+			if (tiles != null) {
+				throw new IllegalStateException("No contour tree when contouring out of core");
+			}
+			if (heightfield != null) {
+				contourTree = new ContourTree(heightfield.heights(), heightfield.edges());
+			} else {
+				MeshTopology topology = topology();
+				contourTree = new ContourTree(topology.heights(), topology.edges());
+			}
+		}
+		return contourTree;
+	}
+
+	/**
+	 * @return The heights at which contours appear, vanish, join or split,
+	 *         ascending. Between two of them the contours only change shape.
+	 */
+	public double[] getCriticalHeights() {
+		return getContourTree().criticalHeights();
+	}
+
+	/**
+	 * @return The number of contours the level would have, without tracing
+	 *         them
+	 */
+	public int loopsAt(double threshold) {
+		return getContourTree().loopsAt(threshold);
+	}
+
+	/**
+	 * @return The number of separate regions below the level, such as lakes
+	 *         if it were the water line
+	 */
+	public int regionsBelow(double threshold) {
+		return getContourTree().getSplitTree().regionsAt(threshold);
+	}
+
+	/**
+	 * @return The number of separate regions at or above the level, such as
+	 *         islands if it were the water line
+	 */
+	public int regionsAbove(double threshold) {
+		return getContourTree().getJoinTree().regionsAt(threshold);
+	}
+
+	/**
+	 * @return The water line above which the points, taken at the nearest
+	 *         vertex, are in one lake: how high the water has to rise to
+	 *         join them
+	 */
+	public double joinHeightBelow(Point2D a, Point2D b) {
+		return getContourTree().getSplitTree().joinHeight(nearestVertex(a), nearestVertex(b));
+	}
+
+	/**
+	 * @return The water line at or below which the points, taken at the
+	 *         nearest vertex, are on one island: how low the water has to
+	 *         fall to join them
+	 */
+	public double joinHeightAbove(Point2D a, Point2D b) {
+		return getContourTree().getJoinTree().joinHeight(nearestVertex(a), nearestVertex(b));
+	}
+
+	private int nearestVertex(Point2D pt) {
+		getContourTree();
+		return heightfield != null ? heightfield.nearestVertex(pt) : topology().nearestVertex(pt);
+	}
+
+	/**
+	 * @return The mesh's topology, made the first time it is needed
+	 */
+	private synchronized MeshTopology topology() {
+		if (topology == null) {
+			topology = new MeshTopology(mesh);
+		}
+		return topology;
+	}
+
+	/**
+	 * @return The sweep over the mesh, made the first time it is needed
+	 */
+	private synchronized LevelSweep sweep() {
+		if (sweep == null) {
+			sweep = new LevelSweep(mesh);
+		}
+		return sweep;
+	}
+
+	/**
+	 * @return The chains at each level, found a run of levels per task
+	 */
+	private List<List<List<Point2D>>> traceMesh(double[] levels) {
+		MeshTopology topology = topology();
+		if (levels.length == 1) {
+			// one lookup is cheaper than sorting the mesh for a sweep
+			return Collections.singletonList(process(levels[0], null, topology));
+		}
+		LevelSweep sweep = sweep();
+		List<List<List<Point2D>>> chains = new ArrayList<List<List<Point2D>>>(
+				Collections.<List<List<Point2D>>>nCopies(levels.length, null));
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int first = 0; first < levels.length; first += LEVELS_PER_TASK) {
+			int from = first, to = Math.min(levels.length, first + LEVELS_PER_TASK);
+			tasks.add(() -> {
+				LevelSweep levelSweep = new LevelSweep(sweep);
+				levelSweep.startAt(levels[from], zIndex);
+				for (int i = from; i < to; i++) {
+					checkInterrupt();
+					levelSweep.advanceTo(levels[i]);
+					chains.set(i, process(levels[i], levelSweep, topology));
 				}
-				prev = vertex;
+				return null;
+			});
+		}
+		run(tasks);
+		return chains;
+	}
+
+	/**
+	 * @return The chains at each level, found a band of rows per task and
+	 *         then joined up a level per task
+	 */
+	private List<List<List<Point2D>>> traceHeightfield(double[] levels) {
+		int bandCount = heightfield.bandCount();
+		List<Heightfield.Band> bands = new ArrayList<Heightfield.Band>(
+				Collections.<Heightfield.Band>nCopies(levels.length * bandCount, null));
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < levels.length; i++) {
+			for (int b = 0; b < bandCount; b++) {
+				int level = i, band = b;
+				tasks.add(() -> {
+					bands.set(level * bandCount + band, heightfield.traceBand(levels[level], band));
+					return null;
+				});
 			}
+		}
+		run(tasks);
+
+		List<List<List<Point2D>>> chains = new ArrayList<List<List<Point2D>>>(
+				Collections.<List<List<Point2D>>>nCopies(levels.length, null));
+		tasks.clear();
+		for (int i = 0; i < levels.length; i++) {
+			int level = i;
+			tasks.add(() -> {
+				chains.set(level, heightfield.stitch(levels[level],
+						bands.subList(level * bandCount, (level + 1) * bandCount)));
+				return null;
+			});
+		}
+		run(tasks);
+		return chains;
+	}
 
-			List<Point2D> list = new ArrayList<Point2D>();
-			// if the triangle intersects the plane...
-			if (countBelow != 3 && countAbove != 3) {
-				// check for consecutive vertices on opposite sides of the plane
-				for (Vec3d vertex : t.getVertices()) {
-					// if they're on opposite sides
-					if ((zThresh - vertex.z) * (zThresh - prev.z) <= 0) {
-						list.add(getIntersect(vertex, prev, zThresh));
-					}
-					if ((vertex.z - zThresh) * (vertex.z - zThresh) <= almostZero) {
-						// not sure this is the right thing to do for the
-						// "equals" case
-						list.add(new Point2D.Double(vertex.x, vertex.y));
-					}
-					prev = vertex;
+	/**
+	 * Runs the tasks on the common fork-join pool, or one after the other if
+	 * not contouring in parallel. If this thread is interrupted while it
+	 * waits, the tasks not started are dropped and the ones running stop at
+	 * their next checkInterrupt.
+	 */
+	private void run(List<Callable<Void>> tasks) {
+		AtomicBoolean stopped = new AtomicBoolean();
+		List<ForkJoinTask<Void>> futures = new ArrayList<ForkJoinTask<Void>>(tasks.size());
+		try {
+			if (parallel) {
+				Thread caller = Thread.currentThread();
+				BooleanSupplier outer = cancelled.get();
+				BooleanSupplier stop = () -> stopped.get() || caller.isInterrupted()
+						|| outer != null && outer.getAsBoolean();
+				for (Callable<Void> task : tasks) {
+					futures.add(ForkJoinPool.commonPool().submit(() -> {
+						BooleanSupplier before = cancelled.get();
+						cancelled.set(stop);
+						try {
+							checkInterrupt();
+							return task.call();
+						} finally {
+							cancelled.set(before);
+						}
+					}));
+				}
+				for (ForkJoinTask<Void> future : futures) {
+					future.get();
 				}
+			} else {
+				for (Callable<Void> task : tasks) {
+					checkInterrupt();
+					task.call();
+				}
+			}
+		} catch (InterruptedException ex) {
+			stopped.set(true);
+			for (ForkJoinTask<Void> future : futures) {
+				future.cancel(false);
 			}
-			addToContour(list, consolidator);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while contouring");
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new IllegalStateException(ex.getCause());
+		} catch (RuntimeException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new IllegalStateException(ex);
 		}
-		for (List<Point2D> list : consolidator.values()) {
-			contour.add(new Contour(list));
+	}
+
+	/**
+	 * Whether to contour levels on several cores. The contours come out the
+	 * same either way, down to their ids.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * @param tolerance
+	 *            how far, in map units, the contours drawn and written out may
+	 *            stray from the contours found; 0 keeps every point that
+	 *            isn't in a straight line with its neighbors
+	 */
+	public void setTolerance(double tolerance) {
+		if (!(tolerance >= 0)) {
+			throw new IllegalArgumentException("Tolerance must not be negative: " + tolerance);
 		}
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Simplifies every contour shown to the tolerance, a batch of contours
+	 * per task. Each contour keeps its simplification, so this only costs
+	 * anything the first time.
+	 */
+	private void simplifyAll() {
+		List<Contour> all = new ArrayList<Contour>();
+		synchronized (contours) {
+			for (Set<Contour> set : contours.values()) {
+				all.addAll(set);
+			}
+		}
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int first = 0; first < all.size(); first += CONTOURS_PER_TASK) {
+			List<Contour> batch = all.subList(first, Math.min(all.size(), first + CONTOURS_PER_TASK));
+			tasks.add(() -> {
+				for (Contour contour : batch) {
+					contour.simplify(tolerance);
+				}
+				return null;
+			});
+		}
+		run(tasks);
+	}
+
+	/**
+	 * Sets how close two segment ends have to be to get joined, where
+	 * contours are stitched by matching up ends: out of core, and for meshes
+	 * with edges shared by more than two triangles. Ends are the same if they
+	 * fall in the same square of this size.
+	 */
+	public void setQuantum(double quantum) {
+		if (!(quantum > 0)) {
+			throw new IllegalArgumentException("Quantum must be positive: " + quantum);
+		}
+		this.quantum = quantum;
+		clearCache();
+	}
 
+	/**
+	 * @param sweep
+	 *            already advanced to zThresh, or null to look the triangles up
+	 *            in the z index
+	 * @return The chains of the z = zThresh contour
+	 */
+	private List<List<Point2D>> process(double zThresh, LevelSweep sweep, MeshTopology topology) {
+		Consumer<IntConsumer> crossing = sweep == null ? visitor -> zIndex.query(zThresh, visitor)
+				: sweep::forEachActive;
+		// stop partway through a level if cancelled
+		Consumer<IntConsumer> triangles = visitor -> {
+			int[] count = { 0 };
+			crossing.accept(t -> {
+				if (++count[0] % TRIANGLES_PER_CHECK == 0) {
+					checkInterrupt();
+				}
+				visitor.accept(t);
+			});
+		};
+		if (topology.isManifold()) {
+			return topology.trace(zThresh, triangles);
+		}
+
+		// some edge is shared by more than two triangles, so there's no
+		// walking from one to the next; match up segment ends instead
+		EndpointTable consolidator = new EndpointTable(bounds, quantum);
+		triangles.accept(t -> addSegment(mesh, t, zThresh, consolidator));
+		return consolidator.chains();
+	}
+
+	private static Set<Contour> toContours(List<List<Point2D>> chains) {
+		return toContours(chains, Contour.reserveIds(chains.size()));
+	}
+
+	private static Set<Contour> toContours(List<List<Point2D>> chains, int firstId) {
+		Set<Contour> contour = new HashSet<Contour>();
+		for (List<Point2D> list : chains) {
+			contour.add(new Contour(list, firstId++));
+		}
 		return contour;
 	}
 
+	/**
+	 * Adds the piece of the z = zThresh contour that crosses the given
+	 * triangle, if any, to the consolidator
+	 */
+	static void addSegment(TriangleMesh mesh, int t, double zThresh, EndpointTable consolidator) {
+		// in case you need to change double equality
+		double almostZero = 0.0000;
+
+		int countBelow = 0, countAbove = 0;
+		int prev = -1;
+
+		// figure out whether this triangle intersects the z = zThresh plane
+		for (int vertex = 3 * t; vertex < 3 * t + 3; vertex++) {
+			double z = mesh.getZ(vertex);
+			// if not zero
+			if (!((z - zThresh) * (z - zThresh) <= almostZero)) {
+				// is below
+				if (z < zThresh) {
+					countBelow++;
+				} else // is above
+				{
+					countAbove++;
+				}
+			}
+			prev = vertex;
+		}
+
+		List<Point2D> list = new ArrayList<Point2D>();
+		// if the triangle intersects the plane...
+		if (countBelow != 3 && countAbove != 3) {
+			// check for consecutive vertices on opposite sides of the plane
+			for (int vertex = 3 * t; vertex < 3 * t + 3; vertex++) {
+				double z = mesh.getZ(vertex);
+				// if they're on opposite sides
+				if ((zThresh - z) * (zThresh - mesh.getZ(prev)) <= 0) {
+					list.add(getIntersect(mesh, vertex, prev, zThresh));
+				}
+				if ((z - zThresh) * (z - zThresh) <= almostZero) {
+					// not sure this is the right thing to do for the
+					// "equals" case
+					list.add(new Point2D.Double(mesh.getX(vertex), mesh.getY(vertex)));
+				}
+				prev = vertex;
+			}
+		}
+		consolidator.add(list);
+	}
+
 	public void createContours(String svgPath) {
 		svgPath = "M 4980.6,1656.53512476 1511.6,3562 4980.6,129.5"//
 				+ " 2985.4,957 105.4,129.5 3453.56487524,129.5 "//
@@ -195,8 +821,10 @@ public class TopoMap {
 			}
 
 		}
-		contours.clear();
-		contours.put(0.0, set);
+		synchronized (contours) {
+			contours.clear();
+			contours.put(0.0, set);
+		}
 	}
 
 	private void doBallardLocksDifferentWay() {
@@ -205,20 +833,20 @@ public class TopoMap {
 		Point2D thisStart = new Point2D.Double(125.10580380722897, 0.0);
 		Point2D thisEnd = new Point2D.Double(33.63252302035765, 86.0098480645299);
 
-		Contour ocean = findContour(otherStart, 3);
-		Contour lake = findContour(thisStart, 4.06);
-
-		lake.splice(ocean, thisStart, thisEnd, otherStart, otherEnd, false);
+		// the lake at 4.06 takes in the ocean at 3
+		splice(4.06, thisStart, thisEnd, 3, otherStart, otherEnd, false, SCRIPT_TOLERANCE);
 
 		thisEnd = new Point2D.Double(170.74498313279213, 279.0);
 		thisStart = new Point2D.Double(33.45732049452805, 89.74933161025403);
 		otherStart = new Point2D.Double(40.46498609551326, 279.0);
 		otherEnd = new Point2D.Double(33.14531709838673, 89.0);
 
-		lake.splice(ocean, thisStart, thisEnd, otherStart, otherEnd, false);
+		splice(4.06, thisStart, thisEnd, 3, otherStart, otherEnd, false, SCRIPT_TOLERANCE);
 
 		// finalize
-		contours.remove(3.0);
+		synchronized (contours) {
+			contours.remove(3.0);
+		}
 	}
 
 	private void doTinyPeninsulaThings(double lakeWash) {
@@ -230,18 +858,17 @@ public class TopoMap {
 				new Point2D.Double(117.0465520656568, 112.48715702477184),
 				new Point2D.Double(117.06282979214781, 113.0) };
 
-		Contour oldContour = findContour(pts[0], lakeWash);
 		List<Point2D> l = Arrays.asList(pts);
 		l = new ArrayList<Point2D>(l);
 		l.add(l.get(0));
 		Contour peninsula = new Contour(l);
 
-		Point2D otherStart = pts[1];
-		Point2D otherEnd = pts[4];
-		Point2D thisStart = pts[5];
-		Point2D thisEnd = pts[0];
+		VertexSnap thisStart = snapOrFail(lakeWash, pts[5], SCRIPT_TOLERANCE);
+		VertexSnap thisEnd = snapOrFail(lakeWash, pts[0], SCRIPT_TOLERANCE);
+		Contour oldContour = sameContour(thisStart, thisEnd);
 
-		oldContour.splice(peninsula, thisStart, thisEnd, otherStart, otherEnd, false);
+		oldContour.splice(peninsula, thisStart.getIndex(), thisEnd.getIndex(), peninsula.indexOf(pts[1]),
+				peninsula.indexOf(pts[4]), false);
 
 	}
 
@@ -266,116 +893,312 @@ public class TopoMap {
 		l.add(l.get(0));
 		Contour south = new Contour(l);
 
-		Contour oldContour = findContour(pts[0][0], lakeWash);
-		contours.get(lakeWash).remove(oldContour);
+		// where the old contour is cut, found before it is taken out
+		VertexSnap northStart = snapOrFail(lakeWash, pts[0][2], SCRIPT_TOLERANCE);
+		VertexSnap northEnd = snapOrFail(lakeWash, pts[0][0], SCRIPT_TOLERANCE);
+		VertexSnap southStart = snapOrFail(lakeWash, pts[1][0], SCRIPT_TOLERANCE);
+		VertexSnap southEnd = snapOrFail(lakeWash, pts[1][3], SCRIPT_TOLERANCE);
+		Contour oldContour = sameContour(northStart, northEnd);
+		sameContour(northStart, southStart);
+		sameContour(northStart, southEnd);
+		synchronized (contours) {
+			contours.get(lakeWash).remove(oldContour);
+		}
 
-		Point2D otherStart = pts[0][2];
-		Point2D otherEnd = pts[0][0];
-		Point2D thisStart = pts[0][1];
-		Point2D thisEnd = pts[0][1];
+		int thisStart = north.indexOf(pts[0][1]);
+		int thisEnd = north.indexOf(pts[0][1]);
 
-		north.splice(oldContour, thisStart, thisEnd, otherStart, otherEnd, false);
+		north.splice(oldContour, thisStart, thisEnd, northStart.getIndex(), northEnd.getIndex(), false);
 
-		otherStart = pts[1][0];
-		otherEnd = pts[1][3];
-		thisStart = pts[1][2];
-		thisEnd = pts[1][1];
+		thisStart = south.indexOf(pts[1][2]);
+		thisEnd = south.indexOf(pts[1][1]);
 
-		south.splice(oldContour, thisStart, thisEnd, otherStart, otherEnd, false);
+		south.splice(oldContour, thisStart, thisEnd, southStart.getIndex(), southEnd.getIndex(), false);
 
-		contours.get(lakeWash).add(north);
-		contours.get(lakeWash).add(south);
+		synchronized (contours) {
+			contours.get(lakeWash).add(north);
+			contours.get(lakeWash).add(south);
+		}
 	}
 
-	private void removeTinys(double areaThreshold) {
-		Set<Contour> toRemove = new HashSet<Contour>();
-		for (Set<Contour> set : contours.values()) {
-			toRemove.clear();
-			for (Contour list : set) {
-				double area = list.getAreaEstimate();
-				if (area < areaThreshold) {
-					toRemove.add(list);
-				}
+	/**
+	 * @return The vertex of a contour shown at the level nearest the point,
+	 *         if it is within tolerance, or null. Found through an index of
+	 *         the level's vertices, which is made on the first snap and
+	 *         remade once the level's contours change.
+	 */
+	public VertexSnap snap(double level, Point2D pt, double tolerance) {
+		Set<Contour> shown;
+		synchronized (contours) {
+			Set<Contour> set = contours.get(level);
+			if (set == null) {
+				return null;
 			}
-			set.removeAll(toRemove);
+			shown = new HashSet<Contour>(set);
 		}
+		VertexIndex index;
+		synchronized (vertexIndexes) {
+			index = vertexIndexes.get(level);
+			if (index == null || !index.isCurrent(shown)) {
+				index = new VertexIndex(level, shown);
+				vertexIndexes.put(level, index);
+			}
+		}
+		return index.snap(pt, tolerance);
 	}
 
-	private Contour findContour(Point2D pt, double thresh) {
-		for (Contour contour : contours.get(thresh)) {
-			if (contour.contains(pt)) {
-				return contour;
+	/**
+	 * @throws IllegalArgumentException
+	 *             Thrown if no vertex is within tolerance
+	 */
+	private VertexSnap snapOrFail(double level, Point2D pt, double tolerance) {
+		VertexSnap snap = snap(level, pt, tolerance);
+		if (snap == null) {
+			throw new IllegalArgumentException(
+					"No contour at level " + level + " has a vertex within " + tolerance + " of " + pt);
+		}
+		return snap;
+	}
+
+	/**
+	 * @return The contour both points snapped to
+	 * @throws IllegalArgumentException
+	 *             Thrown if they snapped to different contours
+	 */
+	private static Contour sameContour(VertexSnap a, VertexSnap b) {
+		if (a.getContour() != b.getContour()) {
+			throw new IllegalArgumentException("Points snapped to different contours: " + a + ", " + b);
+		}
+		return a.getContour();
+	}
+
+	/**
+	 * Contour.splice on contours shown, with each point snapped to the
+	 * nearest vertex within tolerance
+	 * 
+	 * @return Where thisStart, thisEnd, otherStart and otherEnd snapped to
+	 * @throws IllegalArgumentException
+	 *             Thrown if a point isn't within tolerance of a vertex, or two
+	 *             points meant to be on one contour aren't
+	 */
+	public VertexSnap[] splice(double level, Point2D thisStart, Point2D thisEnd, double otherLevel,
+			Point2D otherStart, Point2D otherEnd, boolean reverse, double tolerance) {
+		VertexSnap[] snaps = { snapOrFail(level, thisStart, tolerance), snapOrFail(level, thisEnd, tolerance),
+				snapOrFail(otherLevel, otherStart, tolerance), snapOrFail(otherLevel, otherEnd, tolerance) };
+		Contour contour = sameContour(snaps[0], snaps[1]);
+		Contour other = sameContour(snaps[2], snaps[3]);
+		contour.splice(other, snaps[0].getIndex(), snaps[1].getIndex(), snaps[2].getIndex(), snaps[3].getIndex(),
+				reverse);
+		return snaps;
+	}
+
+	/**
+	 * Contour.insert on a contour shown, with startPt snapped to the nearest
+	 * vertex within tolerance
+	 * 
+	 * @return Where startPt snapped to
+	 * @throws IllegalArgumentException
+	 *             Thrown if startPt isn't within tolerance of a vertex
+	 */
+	public VertexSnap insert(double level, Point2D startPt, List<Point2D> toInsert, double tolerance) {
+		VertexSnap snap = snapOrFail(level, startPt, tolerance);
+		snap.getContour().insert(snap.getIndex(), toInsert);
+		return snap;
+	}
+
+	/**
+	 * Contour.delete on a contour shown, with the points snapped to the
+	 * nearest vertices within tolerance
+	 * 
+	 * @return Where startPt and endPt snapped to
+	 * @throws IllegalArgumentException
+	 *             Thrown if a point isn't within tolerance of a vertex, or
+	 *             they aren't on one contour or span all of it
+	 */
+	public VertexSnap[] delete(double level, Point2D startPt, Point2D endPt, double tolerance) {
+		VertexSnap[] snaps = { snapOrFail(level, startPt, tolerance), snapOrFail(level, endPt, tolerance) };
+		sameContour(snaps[0], snaps[1]).delete(snaps[0].getIndex(), snaps[1].getIndex());
+		return snaps;
+	}
+
+	/**
+	 * Contour.split on a contour shown, with the points snapped to the
+	 * nearest vertices within tolerance. The new contour is shown at the
+	 * same level.
+	 * 
+	 * @return The new contour
+	 * @throws IllegalArgumentException
+	 *             Thrown if a point isn't within tolerance of a vertex, or
+	 *             they aren't on one contour
+	 */
+	public Contour split(double level, Point2D startPt, Point2D endPt, double tolerance) {
+		VertexSnap start = snapOrFail(level, startPt, tolerance), end = snapOrFail(level, endPt, tolerance);
+		Contour split = sameContour(start, end).split(start.getIndex(), end.getIndex());
+		synchronized (contours) {
+			contours.get(level).add(split);
+		}
+		return split;
+	}
+
+	/**
+	 * Stops showing the contours the filter doesn't keep, a level per task
+	 */
+	public void filter(ContourFilter filter) {
+		synchronized (contours) {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (Set<Contour> set : contours.values()) {
+				tasks.add(() -> {
+					set.removeIf(contour -> !filter.keep(contour));
+					return null;
+				});
 			}
+			run(tasks);
 		}
-		return null;
 	}
 
+	/**
+	 * @return Which of the contours shown lie inside which, as they are now
+	 */
+	public ContourHierarchy buildHierarchy() {
+		return new ContourHierarchy(snapshot());
+	}
+
+	private Contour findContour(Point2D pt, double thresh) {
+		VertexSnap snap = snap(thresh, pt, SCRIPT_TOLERANCE);
+		return snap == null ? null : snap.getContour();
+	}
+
+	/**
+	 * Indexes the vertices and drawn segments of the contours shown, so the
+	 * first query after a change doesn't wait for it. Queries index them
+	 * themselves otherwise.
+	 */
 	public void preComputeSearchMap() {
-		searchMap.clear();
-		for (Set<Contour> set : contours.values()) {
-			for (Contour path : set) {
-				for (Point2D pt : path.points()) {
-					Point2D searchPoint = new Point2D.Double((int) pt.getX(), (int) pt.getY());
-					Set<Point2D> matches = searchMap.get(searchPoint);
-					if (matches == null) {
-						matches = new HashSet<Point2D>();
-						searchMap.put(searchPoint, matches);
-					}
-					matches.add(pt);
-				}
+		searchIndex();
+		segmentIndex();
+	}
+
+	/**
+	 * @return The index of the vertices of the contours shown, made again if
+	 *         they have changed
+	 */
+	private VertexIndex searchIndex() {
+		VertexIndex index = searchIndex;
+		if (index != null && isCurrent(index)) {
+			return index;
+		}
+		synchronized (searchIndexLock) {
+			index = searchIndex;
+			if (index == null || !isCurrent(index)) {
+				index = new VertexIndex(snapshot());
+				searchIndex = index;
 			}
+			return index;
+		}
+	}
+
+	private boolean isCurrent(VertexIndex index) {
+		synchronized (contours) {
+			return index.isCurrent(contours);
 		}
 	}
 
 	/**
-	 * Returns null if no nearby pt found
-	 * 
-	 * @param searchPt
-	 * @return
+	 * @return The index of the segments of the contours shown, as drawn, made
+	 *         again if they or the tolerance have changed
 	 */
-	public Point2D query(Point2D searchPt) {
+	private SegmentIndex segmentIndex() {
+		SegmentIndex index = segmentIndex;
+		if (index != null && isCurrent(index)) {
+			return index;
+		}
+		synchronized (segmentIndexLock) {
+			index = segmentIndex;
+			if (index == null || !isCurrent(index)) {
+				simplifyAll();
+				index = new SegmentIndex(snapshot(), tolerance);
+				segmentIndex = index;
+			}
+			return index;
+		}
+	}
+
+	private boolean isCurrent(SegmentIndex index) {
+		synchronized (contours) {
+			return index.isCurrent(contours, tolerance);
+		}
+	}
 
+	/**
+	 * @return The nearest point on the contours as they are drawn, simplified
+	 *         to the tolerance, with the segment, contour and level it is on,
+	 *         or null if there are no contours
+	 */
+	public SegmentSnap queryContour(Point2D searchPt) {
 		if (searchPt == null) {
 			return null;
 		}
+		return segmentIndex().nearest(searchPt);
+	}
 
-		// Compute the four points with integer x/y values closest to the searchPt.
-		int truncX = (int) searchPt.getX();
-		int truncY = (int) searchPt.getY();
-		int otherX = truncX, otherY = truncY;
-		if (searchPt.getX() - .5 < truncX) {
-			otherX--;
-		} else {
-			otherX++;
+	/**
+	 * Like queryContour, but never waits for the segments to be indexed, so
+	 * it can be asked from the event dispatch thread as the mouse moves. If
+	 * the contours have changed since they were last indexed, they are
+	 * indexed again in the background.
+	 * 
+	 * @return The nearest point on the contours as they are drawn, or null if
+	 *         there are none or they are still being indexed
+	 */
+	public SegmentSnap queryContourIfReady(Point2D searchPt) {
+		if (searchPt == null) {
+			return null;
 		}
-		if (searchPt.getY() - .5 < truncY) {
-			otherY--;
-		} else {
-			otherY++;
+		SegmentIndex index = segmentIndex;
+		if (index != null && isCurrent(index)) {
+			return index.nearest(searchPt);
 		}
-		Point2D[] pts = { new Point2D.Double(truncX, truncY), new Point2D.Double(truncX, otherY),
-				new Point2D.Double(otherX, truncY), new Point2D.Double(otherX, otherY) };
-
-		// Index into the search map with these integer-valued points.
-		Set<Point2D> closePts = new HashSet<Point2D>();
-		for (Point2D pt : pts) {
-			if (searchMap.containsKey(pt)) {
-				closePts.addAll(searchMap.get(pt));
-			}
+		if (segmentIndexPending.compareAndSet(false, true)) {
+			ForkJoinPool.commonPool().execute(() -> {
+				try {
+					segmentIndex();
+				} finally {
+					segmentIndexPending.set(false);
+				}
+			});
 		}
+		return null;
+	}
 
-		// Of the points discovered in the search map, return the closest one.
-		Point2D closestPt = null;
-		double minDist = Double.MAX_VALUE;
-		for (Point2D pt : closePts) {
-			double dist = pt.distance(searchPt);
-			if (dist < minDist) {
-				minDist = dist;
-				closestPt = pt;
-			}
+	/**
+	 * Returns null if there are no contours
+	 * 
+	 * @param searchPt
+	 * @return The contour vertex nearest searchPt, however far
+	 */
+	public Point2D query(Point2D searchPt) {
+
+		if (searchPt == null) {
+			return null;
 		}
+		VertexSnap nearest = searchIndex().nearest(searchPt);
+		return nearest == null ? null : nearest.getPoint();
+	}
+
+	/**
+	 * @return The k contour vertices nearest searchPt, nearest first, or every
+	 *         vertex if there are fewer
+	 */
+	public List<VertexSnap> queryNearest(Point2D searchPt, int k) {
+		return searchIndex().nearest(searchPt, k);
+	}
 
-		return closestPt;
+	/**
+	 * @return The contour vertices no farther than radius from searchPt,
+	 *         nearest first
+	 */
+	public List<VertexSnap> queryWithin(Point2D searchPt, double radius) {
+		return searchIndex().within(searchPt, radius);
 	}
 
 	/**
@@ -384,12 +1207,12 @@ public class TopoMap {
 	 * @return
 	 */
 	public List<Path2D> asPaths() {
+		simplifyAll();
 		List<Path2D> paths = new ArrayList<Path2D>();
-		for (double thresh : contours.keySet()) {
-			Set<Contour> curContours = contours.get(thresh);
+		for (Set<Contour> curContours : snapshot().values()) {
 			Path2D path2d = new Path2D.Double();
 			for (Contour path : curContours) {
-				path2d.append(path.asPath(0), false);
+				path2d.append(path.asPath(0, tolerance), false);
 			}
 			paths.add(path2d);
 		}
@@ -402,12 +1225,11 @@ public class TopoMap {
 	 * @return
 	 */
 	public List<Path2D> asSimplePaths(int xOffset) {
-
+		simplifyAll();
 		List<Path2D> paths = new ArrayList<Path2D>();
-		for (double thresh : contours.keySet()) {
-			Set<Contour> curContours = contours.get(thresh);
+		for (Set<Contour> curContours : snapshot().values()) {
 			for (Contour path : curContours) {
-				paths.add(path.asPath(0));
+				paths.add(path.asPath(0, tolerance));
 			}
 		}
 		return paths;
@@ -421,13 +1243,14 @@ public class TopoMap {
 		// id="polyline3846"
 		String mid = "\" points=\"";
 		String post = "\" stroke=\"black\" stroke-width=\"" + strokeWidth + "\" fill=\"none\" />";
+		simplifyAll();
 		try {
 			PrintWriter writer = new PrintWriter(outputFile, "UTF-8");
 			writer.print(header);
 			int i = 0;
-			for (Set<Contour> sets : contours.values()) {
+			for (Set<Contour> sets : snapshot().values()) {
 				for (Contour list : sets) {
-					writer.println(pre + i + mid + list.toStringSimple() + post);
+					writer.println(pre + i + mid + list.toStringSimple(tolerance) + post);
 					i++;
 				}
 			}
@@ -440,7 +1263,7 @@ public class TopoMap {
 
 	public void writePaths(String filename) {
 		List<Contour> simplifiedContours = new ArrayList<Contour>();
-		for (Set<Contour> set : contours.values()) {
+		for (Set<Contour> set : snapshot().values()) {
 			simplifiedContours.addAll(set);
 		}
 		System.out.println("Writing out map: (" + simplifiedContours.size() + " contours)");
@@ -460,67 +1283,12 @@ public class TopoMap {
 		}
 	}
 
-	private void addToContour(List<Point2D> l0, Map<Point2D, List<Point2D>> consolidator) {
-		if (l0.isEmpty()) {
-			return;
-		}
-
-		// beginning state:
-		// l0: list(0) .... list(end)
-		// l1: list(0) .... l1(end) (or l1: null) (or:
-		// l1: l1(end) .... list(0)
-		for (int i = 0; i < 2; i++) {
-			Point2D cur = l0.get(0);
-			List<Point2D> l1 = consolidator.get(rounded(cur));
-			if (l0.equals(l1))
-				continue;
-			if (l1 != null) {
-				// remove l1 from the map for now
-				consolidator.remove(rounded(l1.get(0)));
-				consolidator.remove(rounded(l1.get(l1.size() - 1)));
-
-				if (rounded(l1.get(0)).equals(rounded(cur)))
-					Collections.reverse(l1);
-
-				// at this point, we have:
-				// l0: list(0) .... list(end)
-				// l1: l1(end) .... list(0)
-				l0.remove(0);
-				l1.addAll(l0);
-				l0 = l1;
-
-				// at this point, we have:
-				// l0: l1(end) .... list(0) .... list(end)
-
-				// after the next reverse, we get:
-				// l0: list(end) .... list(0) .... l1(end)
-				// this means that on the second pass through the loop we're
-				// looking for a match of list(end)
-				// and it should still be in the map unless that closed a loop
-				// but in the case of a closed loop at this point both ends of
-				// the list will be that endpoint
-			}
-			Collections.reverse(l0);
-		}
-
-		consolidator.put(rounded(l0.get(0)), l0);
-		consolidator.put(rounded(l0.get(l0.size() - 1)), l0);
-	}
-
-	private Point2D getIntersect(Vec3d pt1, Vec3d pt2, double zThresh) {
-		double scale = (zThresh - pt1.z) / (pt2.z - pt1.z);
-		double newX = pt1.x + scale * (pt2.x - pt1.x);
-		double newY = pt1.y + scale * (pt2.y - pt1.y);
+	static Point2D getIntersect(TriangleMesh mesh, int pt1, int pt2, double zThresh) {
+		double z1 = mesh.getZ(pt1), x1 = mesh.getX(pt1), y1 = mesh.getY(pt1);
+		double scale = (zThresh - z1) / (mesh.getZ(pt2) - z1);
+		double newX = x1 + scale * (mesh.getX(pt2) - x1);
+		double newY = y1 + scale * (mesh.getY(pt2) - y1);
 
 		return new Point2D.Double(newX, newY);
 	}
-
-	private Point2D rounded(Point2D pt) {
-		return new Point2D.Double(round(pt.getX()), round(pt.getY()));
-	}
-
-	private double round(double db) {
-		int val = 100000;
-		return (int) (db * val);
-	}
 }
@@ -31,11 +31,11 @@ import java.util.Arrays;
  */
 public class Triangle {
 	private final Vec3d[] vertices;
-	private final Vec3d normal;
+	private Vec3d normal;
 	/**
 	 * Creates a triangle with the given vertices at its corners. The normal is 
-	 * calculated by assuming that the vertices were provided in right-handed 
-	 * coordinate space (counter-clockwise)
+	 * calculated (when first asked for) by assuming that the vertices were 
+	 * provided in right-handed coordinate space (counter-clockwise)
 	 * @param v1 A corner vertex
 	 * @param v2 A corner vertex
 	 * @param v3 A corner vertex
@@ -45,9 +45,6 @@ public class Triangle {
 		vertices[0] = v1;
 		vertices[1] = v2;
 		vertices[2] = v3;
-		Vec3d edge1 = v2.sub(v1);
-		Vec3d edge2 = v3.sub(v1);
-		normal = Vec3d.cross(edge1, edge2).normalize();
 	}
 	/**
 	 * Moves the triangle in the X,Y,Z direction
@@ -84,6 +81,11 @@ public class Triangle {
 	 * the triangle.
 	 */
 	public Vec3d getNormal(){
+		if(normal == null){
+			Vec3d edge1 = vertices[1].sub(vertices[0]);
+			Vec3d edge2 = vertices[2].sub(vertices[0]);
+			normal = Vec3d.cross(edge1, edge2).normalize();
+		}
 		return normal;
 	}
 	
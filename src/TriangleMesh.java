@@ -0,0 +1,217 @@
+import java.util.Arrays;
+
+/**
+ * A triangle mesh stored as columns of primitive coordinates instead of one
+ * Triangle (and its Vec3ds) per facet. Vertices are not shared: triangle t has
+ * its corners at vertex indices 3t, 3t + 1 and 3t + 2, in file order.
+ *
+ * That is 72 bytes a triangle, against about 220 for the Triangle objects it
+ * replaced. Coordinates stay doubles so text STLs keep their precision, and
+ * corners stay unshared so parsers can fill distinct triangles from several
+ * threads without matching up vertices. Terrain2STL height maps, the usual
+ * input, don't keep a mesh at all once loaded: TopoMap swaps it for a
+ * Heightfield.
+ */
+public class TriangleMesh {
+
+	private double[] x;
+	private double[] y;
+	private double[] z;
+	private int size = 0;
+	private double[][] bounds;
+
+	public TriangleMesh() {
+		this(1024);
+	}
+
+	/**
+	 * @param capacity number of triangles to make room for up front
+	 */
+	public TriangleMesh(int capacity) {
+		capacity = Math.max(capacity, 1);
+		x = new double[3 * capacity];
+		y = new double[3 * capacity];
+		z = new double[3 * capacity];
+	}
+
+	/**
+	 * Wraps columns that already hold size triangles, without copying them
+	 */
+	TriangleMesh(double[] x, double[] y, double[] z, int size) {
+		if (x.length < 3L * size || y.length < 3L * size || z.length < 3L * size) {
+			throw new IllegalArgumentException("Columns too short for " + size + " triangles");
+		}
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.size = size;
+	}
+
+	/**
+	 * Appends a triangle with the given corners
+	 */
+	public void add(double x0, double y0, double z0, //
+			double x1, double y1, double z1, //
+			double x2, double y2, double z2) {
+		if (3 * size + 3 > x.length) {
+			grow();
+		}
+		int v = 3 * size;
+		x[v] = x0;
+		y[v] = y0;
+		z[v] = z0;
+		x[v + 1] = x1;
+		y[v + 1] = y1;
+		z[v + 1] = z1;
+		x[v + 2] = x2;
+		y[v + 2] = y2;
+		z[v + 2] = z2;
+		size++;
+		bounds = null;
+	}
+
+	/**
+	 * Appends all of the other mesh's triangles, in order
+	 */
+	public void addAll(TriangleMesh other) {
+		int oldSize = size;
+		setSize(size + other.size);
+		System.arraycopy(other.x, 0, x, 3 * oldSize, 3 * other.size);
+		System.arraycopy(other.y, 0, y, 3 * oldSize, 3 * other.size);
+		System.arraycopy(other.z, 0, z, 3 * oldSize, 3 * other.size);
+	}
+
+	/**
+	 * Overwrites the corners of an existing triangle. Distinct triangles may
+	 * be set from different threads at once.
+	 */
+	public void setTriangle(int triangle, double x0, double y0, double z0, //
+			double x1, double y1, double z1, //
+			double x2, double y2, double z2) {
+		if (triangle < 0 || triangle >= size) {
+			throw new IndexOutOfBoundsException("Triangle " + triangle + " of " + size);
+		}
+		int v = 3 * triangle;
+		x[v] = x0;
+		y[v] = y0;
+		z[v] = z0;
+		x[v + 1] = x1;
+		y[v + 1] = y1;
+		z[v + 1] = z1;
+		x[v + 2] = x2;
+		y[v + 2] = y2;
+		z[v + 2] = z2;
+		bounds = null;
+	}
+
+	/**
+	 * Grows or shrinks the mesh to the given number of triangles. New
+	 * triangles have all their corners at the origin until they are set.
+	 */
+	public void setSize(int size) {
+		while (3L * size > x.length) {
+			grow();
+		}
+		if (size < this.size) {
+			Arrays.fill(x, 3 * size, 3 * this.size, 0);
+			Arrays.fill(y, 3 * size, 3 * this.size, 0);
+			Arrays.fill(z, 3 * size, 3 * this.size, 0);
+		}
+		this.size = size;
+		bounds = null;
+	}
+
+	/**
+	 * Records bounds already worked out by whoever filled the mesh, so they
+	 * don't have to be found with another pass over every vertex.
+	 *
+	 * @param bounds { minX, minY, minZ, maxX, maxY, maxZ }
+	 */
+	void setBounds(double[] bounds) {
+		this.bounds = new double[][] { Arrays.copyOfRange(bounds, 0, 3), Arrays.copyOfRange(bounds, 3, 6) };
+	}
+
+	private void grow() {
+		// stay well under the maximum array length
+		int capacity = (int) Math.min(Integer.MAX_VALUE - 8, x.length * 2L);
+		if (capacity - x.length < 3) {
+			throw new IllegalStateException("Too many triangles for one mesh: " + size);
+		}
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		z = Arrays.copyOf(z, capacity);
+	}
+
+	/**
+	 * @return The number of triangles in this mesh
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The number of vertices in this mesh, always 3 * size()
+	 */
+	public int vertexCount() {
+		return 3 * size;
+	}
+
+	public double getX(int vertex) {
+		return x[vertex];
+	}
+
+	public double getY(int vertex) {
+		return y[vertex];
+	}
+
+	public double getZ(int vertex) {
+		return z[vertex];
+	}
+
+	/**
+	 * @return The lowest z value of the given triangle's corners
+	 */
+	public double getZMin(int triangle) {
+		int v = 3 * triangle;
+		return Double.min(z[v], Double.min(z[v + 1], z[v + 2]));
+	}
+
+	/**
+	 * @return The highest z value of the given triangle's corners
+	 */
+	public double getZMax(int triangle) {
+		int v = 3 * triangle;
+		return Double.max(z[v], Double.max(z[v + 1], z[v + 2]));
+	}
+
+	/**
+	 * Builds a Triangle object for the given triangle, for callers that want
+	 * one. The mesh itself does not keep these around.
+	 */
+	public Triangle getTriangle(int triangle) {
+		int v = 3 * triangle;
+		return new Triangle(new Vec3d(x[v], y[v], z[v]), //
+				new Vec3d(x[v + 1], y[v + 1], z[v + 1]), //
+				new Vec3d(x[v + 2], y[v + 2], z[v + 2]));
+	}
+
+	/**
+	 * @return { {minX, minY, minZ}, {maxX, maxY, maxZ} } over all vertices
+	 */
+	public double[][] getBounds() {
+		if (bounds == null) {
+			double[] min = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+			double[] max = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+			for (int v = 0; v < 3 * size; v++) {
+				min[0] = Math.min(min[0], x[v]);
+				min[1] = Math.min(min[1], y[v]);
+				min[2] = Math.min(min[2], z[v]);
+				max[0] = Math.max(max[0], x[v]);
+				max[1] = Math.max(max[1], y[v]);
+				max[2] = Math.max(max[2], z[v]);
+			}
+			bounds = new double[][] { min, max };
+		}
+		return new double[][] { Arrays.copyOf(bounds[0], 3), Arrays.copyOf(bounds[1], 3) };
+	}
+}
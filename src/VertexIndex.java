@@ -0,0 +1,155 @@
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Every vertex of a set of contours in a PointGrid, for finding the vertices
+ * near a point without scanning every contour. It remembers how far each
+ * contour had been edited when it was built, so it can tell when it is out of
+ * date.
+ */
+public class VertexIndex {
+
+	private final Contour[] contours;
+	private final double[] levels;
+	private final int[] modCounts;
+	// the vertices of contour k are numbered first[k] to first[k + 1] - 1
+	private final int[] first;
+	private final PointGrid grid;
+
+	/**
+	 * @param contours
+	 *            the contours at one level
+	 */
+	public VertexIndex(double level, Set<Contour> contours) {
+		this(Collections.singletonMap(level, contours));
+	}
+
+	/**
+	 * @param contours
+	 *            the contours at each level, such as TopoMap shows
+	 */
+	public VertexIndex(Map<Double, Set<Contour>> contours) {
+		int n = 0;
+		for (Set<Contour> set : contours.values()) {
+			n += set.size();
+		}
+		this.contours = new Contour[n];
+		levels = new double[n];
+		modCounts = new int[n];
+		first = new int[n + 1];
+		int k = 0;
+		for (Map.Entry<Double, Set<Contour>> entry : contours.entrySet()) {
+			for (Contour contour : entry.getValue()) {
+				this.contours[k] = contour;
+				levels[k] = entry.getKey();
+				modCounts[k] = contour.modCount();
+				first[k + 1] = first[k] + contour.size();
+				k++;
+			}
+		}
+		double[] points = new double[2 * first[n]];
+		for (k = 0; k < n; k++) {
+			double[] xy = this.contours[k].toArray();
+			System.arraycopy(xy, 0, points, 2 * first[k], xy.length);
+		}
+		grid = new PointGrid(points, first[n]);
+	}
+
+	/**
+	 * @return Whether the index still matches the contours at a level: the
+	 *         same ones, none edited since it was built
+	 */
+	public boolean isCurrent(Set<Contour> contours) {
+		if (contours.size() != this.contours.length) {
+			return false;
+		}
+		for (int k = 0; k < this.contours.length; k++) {
+			if (this.contours[k].modCount() != modCounts[k] || !contours.contains(this.contours[k])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Whether the index still matches the contours at each level: the
+	 *         same ones at the same levels, none edited since it was built
+	 */
+	public boolean isCurrent(Map<Double, Set<Contour>> contours) {
+		int n = 0;
+		for (Set<Contour> set : contours.values()) {
+			n += set.size();
+		}
+		if (n != this.contours.length) {
+			return false;
+		}
+		for (int k = 0; k < this.contours.length; k++) {
+			Set<Contour> set = contours.get(levels[k]);
+			if (this.contours[k].modCount() != modCounts[k] || set == null || !set.contains(this.contours[k])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The vertex nearest the point, if it is within tolerance, or
+	 *         null
+	 */
+	public VertexSnap snap(Point2D pt, double tolerance) {
+		int vertex = grid.nearest(pt.getX(), pt.getY(), tolerance);
+		return vertex < 0 ? null : snapTo(vertex, pt);
+	}
+
+	/**
+	 * @return The vertex nearest the point, or null if there are none
+	 */
+	public VertexSnap nearest(Point2D pt) {
+		return snap(pt, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * @return The k vertices nearest the point, nearest first
+	 */
+	public List<VertexSnap> nearest(Point2D pt, int k) {
+		int[] vertices = grid.kNearest(pt.getX(), pt.getY(), k);
+		List<VertexSnap> snaps = new ArrayList<VertexSnap>(vertices.length);
+		for (int vertex : vertices) {
+			snaps.add(snapTo(vertex, pt));
+		}
+		return snaps;
+	}
+
+	/**
+	 * @return The vertices no farther than radius from the point, nearest
+	 *         first
+	 */
+	public List<VertexSnap> within(Point2D pt, double radius) {
+		List<VertexSnap> snaps = new ArrayList<VertexSnap>();
+		grid.within(pt.getX(), pt.getY(), radius, vertex -> snaps.add(snapTo(vertex, pt)));
+		snaps.sort(Comparator.comparingDouble(VertexSnap::getDistance));
+		return snaps;
+	}
+
+	private VertexSnap snapTo(int vertex, Point2D pt) {
+		// the contour whose run of numbers holds the vertex
+		int low = 0, high = contours.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (first[mid] <= vertex) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		Contour contour = contours[low];
+		int index = vertex - first[low];
+		return new VertexSnap(contour, index, levels[low],
+				pt.distance(contour.getX(index), contour.getY(index)));
+	}
+}
@@ -0,0 +1,59 @@
+import java.awt.geom.Point2D;
+
+/**
+ * Where a point was snapped to: a vertex of a contour, by its index in
+ * canonical order
+ */
+public class VertexSnap {
+
+	private final Contour contour;
+	private final int index;
+	private final double level;
+	private final double distance;
+
+	VertexSnap(Contour contour, int index, double level, double distance) {
+		this.contour = contour;
+		this.index = index;
+		this.level = level;
+		this.distance = distance;
+	}
+
+	public Contour getContour() {
+		return contour;
+	}
+
+	/**
+	 * @return The vertex's index in the contour, in canonical order, as of
+	 *         when it was snapped to
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return The level of the contour
+	 */
+	public double getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return The vertex
+	 */
+	public Point2D getPoint() {
+		return new Point2D.Double(contour.getX(index), contour.getY(index));
+	}
+
+	/**
+	 * @return How far the point snapped was from the vertex
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	@Override
+	public String toString() {
+		return "VertexSnap[level " + level + ", index " + index + " of " + contour.size() + ", distance " + distance
+				+ "]";
+	}
+}